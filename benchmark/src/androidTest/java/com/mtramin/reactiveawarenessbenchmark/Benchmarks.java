@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessbenchmark;
+
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs operations in a loop on the device and logs how long a single run takes and how many
+ * objects it allocates.
+ * <p>
+ * Allocations are counted in a separate loop, as counting them slows down the runtime.
+ */
+public final class Benchmarks {
+
+    private static final String TAG = "ReactiveAwarenessBench";
+
+    private static final int WARM_UP_ITERATIONS = 2_000;
+    private static final int MEASURED_ITERATIONS = 20_000;
+
+    // results are written here so that the runtime can't drop the measured operations
+    private static volatile Object sink;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Measures the given operation and logs the results under the tag {@value #TAG}.
+     *
+     * @param name      name of the benchmark to log
+     * @param operation operation to measure, its result is consumed
+     * @throws Exception if the operation fails
+     */
+    public static void measure(String name, Callable<?> operation) throws Exception {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            sink = operation.call();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            sink = operation.call();
+        }
+        long nanosPerOperation = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+
+        int allocations = countAllocations(operation);
+
+        Log.i(TAG, String.format(Locale.US, "%s: %d ns/op, %.1f allocations/op",
+                name, nanosPerOperation, allocations / (float) MEASURED_ITERATIONS));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int countAllocations(Callable<?> operation) throws Exception {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                sink = operation.call();
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+}
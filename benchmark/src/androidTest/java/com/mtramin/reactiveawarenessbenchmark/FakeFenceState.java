@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessbenchmark;
+
+import com.google.android.gms.awareness.fence.FenceState;
+
+/**
+ * {@link FenceState} as it is extracted from the broadcasts of the Awareness API, which can't be
+ * created on the device.
+ */
+public class FakeFenceState extends FenceState {
+
+    private final String key;
+    private final int currentState;
+    private final int previousState;
+    private final long lastUpdateTimeMillis;
+
+    public FakeFenceState(String key, int currentState, int previousState, long lastUpdateTimeMillis) {
+        this.key = key;
+        this.currentState = currentState;
+        this.previousState = previousState;
+        this.lastUpdateTimeMillis = lastUpdateTimeMillis;
+    }
+
+    @Override
+    public int getCurrentState() {
+        return currentState;
+    }
+
+    @Override
+    public int getPreviousState() {
+        return previousState;
+    }
+
+    @Override
+    public String getFenceKey() {
+        return key;
+    }
+
+    @Override
+    public long getLastFenceUpdateTimeMillis() {
+        return lastUpdateTimeMillis;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessbenchmark;
+
+import android.location.Location;
+
+import com.google.android.gms.awareness.snapshot.DetectedActivityResult;
+import com.google.android.gms.awareness.snapshot.LocationResult;
+import com.google.android.gms.awareness.snapshot.WeatherResult;
+import com.google.android.gms.awareness.state.Weather;
+import com.google.android.gms.common.api.CommonStatusCodes;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.ActivityRecognitionResult;
+import com.google.android.gms.location.DetectedActivity;
+
+import java.util.Arrays;
+
+/**
+ * Successful Awareness API results to answer the requests of the benchmarks with.
+ */
+public final class FakeResults {
+
+    private static final Status SUCCESS = new Status(CommonStatusCodes.SUCCESS);
+
+    private FakeResults() {
+    }
+
+    public static WeatherResult weather(float temperatureCelsius, int humidity, int... conditions) {
+        Weather weather = new Weather() {
+            @Override
+            public float getTemperature(int temperatureUnit) {
+                return convert(temperatureCelsius, temperatureUnit);
+            }
+
+            @Override
+            public float getFeelsLikeTemperature(int temperatureUnit) {
+                return convert(temperatureCelsius, temperatureUnit);
+            }
+
+            @Override
+            public float getDewPoint(int temperatureUnit) {
+                return convert(temperatureCelsius - (100 - humidity) / 5f, temperatureUnit);
+            }
+
+            @Override
+            public int getHumidity() {
+                return humidity;
+            }
+
+            @Override
+            public int[] getConditions() {
+                return conditions.clone();
+            }
+        };
+
+        return new WeatherResult() {
+            @Override
+            public Weather getWeather() {
+                return weather;
+            }
+
+            @Override
+            public Status getStatus() {
+                return SUCCESS;
+            }
+        };
+    }
+
+    /**
+     * @param activities activities ordered by their confidence, most probable first
+     */
+    public static DetectedActivityResult activities(DetectedActivity... activities) {
+        ActivityRecognitionResult result = new ActivityRecognitionResult(Arrays.asList(activities), System.currentTimeMillis(), 0);
+
+        return new DetectedActivityResult() {
+            @Override
+            public ActivityRecognitionResult getActivityRecognitionResult() {
+                return result;
+            }
+
+            @Override
+            public Status getStatus() {
+                return SUCCESS;
+            }
+        };
+    }
+
+    public static LocationResult location(double latitude, double longitude, float speed) {
+        Location location = new Location("fused");
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setSpeed(speed);
+        location.setAccuracy(10);
+        location.setTime(System.currentTimeMillis());
+
+        return new LocationResult() {
+            @Override
+            public Location getLocation() {
+                return location;
+            }
+
+            @Override
+            public Status getStatus() {
+                return SUCCESS;
+            }
+        };
+    }
+
+    private static float convert(float celsius, int temperatureUnit) {
+        return temperatureUnit == Weather.FAHRENHEIT ? celsius * 9 / 5 + 32 : celsius;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessbenchmark;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.android.gms.awareness.state.Weather;
+import com.google.android.gms.location.DetectedActivity;
+import com.mtramin.reactiveawareness2.FakeAwarenessTransport;
+import com.mtramin.reactiveawareness2.ReactiveSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the derived getters of {@link ReactiveSnapshot}, including the mapping of the results,
+ * against a {@link FakeAwarenessTransport} that answers without delay.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SnapshotBenchmark {
+
+    private static final int MINIMUM_PROBABILITY = 30;
+
+    private ReactiveSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+
+        FakeAwarenessTransport transport = new FakeAwarenessTransport()
+                .setWeatherResult(FakeResults.weather(21.5f, 60,
+                        Weather.CONDITION_CLEAR, Weather.CONDITION_CLOUDY, Weather.CONDITION_WINDY))
+                .setDetectedActivityResult(FakeResults.activities(
+                        new DetectedActivity(DetectedActivity.WALKING, 55),
+                        new DetectedActivity(DetectedActivity.ON_FOOT, 35),
+                        new DetectedActivity(DetectedActivity.STILL, 6),
+                        new DetectedActivity(DetectedActivity.IN_VEHICLE, 4)))
+                .setLocationResult(FakeResults.location(52.52, 13.405, 1.4f));
+
+        snapshot = ReactiveSnapshot.create(context, transport);
+    }
+
+    @Test
+    public void temperature() throws Exception {
+        assertEquals(21.5f, snapshot.getTemperature(Weather.CELSIUS).blockingGet(), 0f);
+
+        Benchmarks.measure("temperature", () -> snapshot.getTemperature(Weather.CELSIUS).blockingGet());
+    }
+
+    @Test
+    public void weatherConditions() throws Exception {
+        assertEquals(Arrays.asList(Weather.CONDITION_CLEAR, Weather.CONDITION_CLOUDY, Weather.CONDITION_WINDY),
+                snapshot.getWeatherConditions().blockingGet());
+
+        Benchmarks.measure("weatherConditions", () -> snapshot.getWeatherConditions().blockingGet());
+    }
+
+    @Test
+    public void latLng() throws Exception {
+        assertEquals(52.52, snapshot.getLatLng().blockingGet().latitude, 0);
+
+        Benchmarks.measure("latLng", () -> snapshot.getLatLng().blockingGet());
+    }
+
+    @Test
+    public void speed() throws Exception {
+        assertEquals(1.4f, snapshot.getSpeed().blockingGet(), 0f);
+
+        Benchmarks.measure("speed", () -> snapshot.getSpeed().blockingGet());
+    }
+
+    @Test
+    public void mostProbableActivity() throws Exception {
+        assertEquals(DetectedActivity.WALKING, snapshot.getMostProbableActivity(MINIMUM_PROBABILITY).blockingGet().getType());
+
+        Benchmarks.measure("mostProbableActivity", () -> snapshot.getMostProbableActivity(MINIMUM_PROBABILITY).blockingGet());
+    }
+
+    @Test
+    public void probableActivities() throws Exception {
+        assertEquals(2, snapshot.getProbableActivities(MINIMUM_PROBABILITY).blockingGet().size());
+
+        Benchmarks.measure("probableActivities", () -> snapshot.getProbableActivities(MINIMUM_PROBABILITY).blockingGet());
+    }
+}
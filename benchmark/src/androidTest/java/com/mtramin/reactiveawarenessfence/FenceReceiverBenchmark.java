@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.android.gms.awareness.fence.FenceState;
+import com.mtramin.reactiveawarenessbenchmark.Benchmarks;
+import com.mtramin.reactiveawarenessbenchmark.FakeFenceState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures {@link FenceReceiver#onReceive(Context, Intent)} for the different ways data can be
+ * attached to a background fence, including decoding the data from the delivered
+ * {@link FenceEvent}.
+ * <p>
+ * The intents are marshalled once like a delivered broadcast and copied for every run, so that
+ * their extras are unmarshalled again on access.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FenceReceiverBenchmark {
+
+    private static final String FENCE_KEY = "benchmark";
+
+    private final FenceState state = new FakeFenceState(FENCE_KEY, FenceState.TRUE, FenceState.FALSE, 1478000000000L);
+
+    private Context context;
+    private LastEventReceiver receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getTargetContext();
+        receiver = new LastEventReceiver();
+
+        new FencePayloadStore(context).put(FENCE_KEY, data());
+    }
+
+    @After
+    public void tearDown() {
+        new FencePayloadStore(context).remove(FENCE_KEY);
+    }
+
+    @Test
+    public void withoutData() throws Exception {
+        Intent delivered = delivered(new Intent());
+        assertTrue(receive(delivered).getState());
+
+        Benchmarks.measure("FenceReceiver.withoutData", () -> receive(delivered).getState());
+    }
+
+    @Test
+    public void withBundle() throws Exception {
+        Intent delivered = delivered(new Intent().putExtra(FenceReceiver.EXTRA_BUNDLE, data()));
+        assertEquals("office", receive(delivered).getData().getString("place"));
+
+        Benchmarks.measure("FenceReceiver.withBundle", () -> receive(delivered).getData());
+    }
+
+    @Test
+    public void withStoredData() throws Exception {
+        Intent delivered = delivered(new Intent().putExtra(FenceReceiver.EXTRA_PAYLOAD_ID, FENCE_KEY));
+        assertEquals("office", receive(delivered).getData().getString("place"));
+
+        Benchmarks.measure("FenceReceiver.withStoredData", () -> receive(delivered).getData());
+    }
+
+    @Test
+    public void withPayload() throws Exception {
+        FencePayload payload = FencePayload.builder()
+                .putString("place", "office")
+                .putLong("createdAt", 1478000000000L)
+                .putInt("priority", 2)
+                .build();
+        Intent delivered = delivered(new Intent().putExtra(FenceReceiver.EXTRA_PAYLOAD, payload.encode()));
+        assertTrue(payload.equals(receive(delivered).getPayload()));
+
+        Benchmarks.measure("FenceReceiver.withPayload", () -> receive(delivered).getPayload());
+    }
+
+    private FenceEvent receive(Intent delivered) {
+        receiver.onReceive(context, new Intent(delivered), state);
+        return receiver.event;
+    }
+
+    private static Bundle data() {
+        Bundle data = new Bundle();
+        data.putString("place", "office");
+        data.putLong("createdAt", 1478000000000L);
+        data.putInt("priority", 2);
+        return data;
+    }
+
+    private static Intent delivered(Intent intent) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            intent.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return Intent.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static class LastEventReceiver extends FenceReceiver {
+
+        private FenceEvent event;
+
+        @Override
+        protected void onUpdate(@NonNull Context context, @NonNull FenceEvent event) {
+            this.event = event;
+        }
+
+        @Override
+        protected void onUpdate(@NonNull Context context, @NonNull String key, boolean state, @Nullable Bundle bundle) {
+        }
+    }
+}
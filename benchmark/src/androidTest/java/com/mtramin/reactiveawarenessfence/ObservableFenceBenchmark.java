@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.android.gms.awareness.fence.FenceState;
+import com.google.android.gms.awareness.fence.HeadphoneFence;
+import com.google.android.gms.awareness.state.HeadphoneState;
+import com.google.android.gms.common.api.CommonStatusCodes;
+import com.google.android.gms.common.api.Status;
+import com.mtramin.reactiveawareness2.FakeAwarenessTransport;
+import com.mtramin.reactiveawareness2.PlayServicesTransport;
+import com.mtramin.reactiveawarenessbenchmark.Benchmarks;
+import com.mtramin.reactiveawarenessbenchmark.FakeFenceState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the state updates of an {@link ObservableFence} from the broadcast receiver until they
+ * are received by its subscriber.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ObservableFenceBenchmark {
+
+    private final FenceState[] states = {
+            new FakeFenceState("ObservableFence", FenceState.TRUE, FenceState.FALSE, 0),
+            new FakeFenceState("ObservableFence", FenceState.FALSE, FenceState.TRUE, 0)
+    };
+
+    private final AtomicLong received = new AtomicLong();
+
+    private ReceiverCapturingContext context;
+    private TestObserver<Void> observer;
+
+    @Before
+    public void setUp() {
+        context = new ReceiverCapturingContext(InstrumentationRegistry.getTargetContext());
+
+        BackgroundFence.setTransport(new FakeAwarenessTransport()
+                .setFenceUpdateStatus(new Status(CommonStatusCodes.SUCCESS)));
+
+        observer = ObservableFence.create(context, HeadphoneFence.during(HeadphoneState.PLUGGED_IN))
+                .doOnNext(state -> received.incrementAndGet())
+                .ignoreElements()
+                .test();
+    }
+
+    @After
+    public void tearDown() {
+        observer.dispose();
+        BackgroundFence.setTransport(new PlayServicesTransport());
+    }
+
+    @Test
+    public void emit() throws Exception {
+        ObservableFence.StateReceiver receiver = context.receiver;
+        receiver.onStateChanged(states[0]);
+        assertEquals(1, received.get());
+
+        int[] next = {0};
+        Benchmarks.measure("ObservableFence.emit", () -> {
+            receiver.onStateChanged(states[next[0]++ & 1]);
+            return received.get();
+        });
+
+        // the fence must stay registered while states are received
+        observer.assertNoErrors().assertNotComplete();
+    }
+
+    /**
+     * Keeps the receiver of the fence instead of registering it, so that states can be passed to
+     * it directly.
+     */
+    private static class ReceiverCapturingContext extends ContextWrapper {
+
+        private ObservableFence.StateReceiver receiver;
+
+        private ReceiverCapturingContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter, String broadcastPermission, Handler scheduler) {
+            this.receiver = (ObservableFence.StateReceiver) receiver;
+            return null;
+        }
+
+        @Override
+        public void unregisterReceiver(BroadcastReceiver receiver) {
+            this.receiver = null;
+        }
+    }
+}
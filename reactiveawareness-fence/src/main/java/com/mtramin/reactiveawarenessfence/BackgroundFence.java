@@ -21,8 +21,16 @@ import android.os.Bundle;
 import android.support.annotation.Nullable;
 
 import com.google.android.gms.awareness.fence.AwarenessFence;
+import com.google.android.gms.awareness.fence.FenceState;
 import com.google.android.gms.awareness.fence.FenceStateMap;
+import com.mtramin.reactiveawareness2.AwarenessTransport;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 
 /**
@@ -35,13 +43,18 @@ import io.reactivex.Single;
  * <p>
  * By calling {@link #register(Context, String, AwarenessFence)} you can register your new
  * background fence. Registering the same background fence with the same name will result in just
- * replacing the old fence. So make sure that Fence names are unique and to only register fences
- * when they are not already registered.
+ * replacing the old fence. So make sure that Fence names are unique. Registering a fence with the
+ * same definition and data it is currently registered with does nothing, so fences can safely be
+ * registered on every start of the application.
  * <p>
  * Once you don't need callbacks from a background fence anymore, unregister it by calling
  * {@link #unregister(Context, String)}.
  * <p>
  * With {@link #query(Context)} you can check which fences are currently registered.
+ * <p>
+ * Operations on the same fence are executed in the order they were called in, so unregistering a
+ * fence right after registering it never leaves the fence registered. Operations on different
+ * fences are executed in parallel.
  */
 public class BackgroundFence {
 
@@ -58,9 +71,11 @@ public class BackgroundFence {
      * @param context        Context to use for registering the fence
      * @param name           name of the fence to register. Should be unique
      * @param awarenessFence The fence description
+     * @return Completable that completes once the fence is registered. The registration is
+     * executed without subscribing to it
      */
-    public static void register(Context context, String name, AwarenessFence awarenessFence) {
-        RegisterBackgroundFenceAction.register(context, name, awarenessFence);
+    public static Completable register(Context context, String name, AwarenessFence awarenessFence) {
+        return RegisterBackgroundFenceAction.register(context, name, awarenessFence);
     }
 
     /**
@@ -79,9 +94,69 @@ public class BackgroundFence {
      * @param data           data to attach to the fence. This data bundle will also be returned on
      *                       Fence Callbacks. Instead of passing {@code null}, call
      *                       {@link #register(Context, String, AwarenessFence)} instead.
+     * @return Completable that completes once the fence is registered. The registration is
+     * executed without subscribing to it
+     */
+    public static Completable registerWithData(Context context, String name, AwarenessFence awarenessFence, @Nullable Bundle data) {
+        return RegisterBackgroundFenceAction.registerWithData(context, name, awarenessFence, data);
+    }
+
+    /**
+     * Registers a background fence described by a {@link FenceExpression}. Only the leaves of the
+     * expression are registered with the Awareness API, each of them once no matter how many
+     * registered expressions share it. The expression itself is evaluated locally and its state
+     * changes are delivered to the {@link FenceReceiver} like those of other background fences.
+     * <p>
+     * Registering an expression with the same name replaces the old expression. As expressions
+     * are not registered with the Awareness API, they are not contained in the results of
+     * {@link #query(Context)}, {@link #query(Context, Collection)} and {@link #refresh(Context)}.
+     *
+     * @param context    Context to use for registering the fence
+     * @param name       name of the fence to register. Should be unique
+     * @param expression The fence description
+     * @return Completable that completes once the fence is registered. The registration is
+     * executed without subscribing to it
+     */
+    public static Completable register(Context context, String name, FenceExpression expression) {
+        return CompositeBackgroundFenceAction.register(context, name, expression);
+    }
+
+    /**
+     * Registers a background fence like {@link #registerWithData(Context, String, AwarenessFence, Bundle)},
+     * but keeps the data in a local store instead of attaching it to the PendingIntent held by the
+     * system. This keeps the PendingIntent small, the data is only read once it is accessed in
+     * {@link FenceReceiver#onUpdate(Context, FenceEvent)}.
+     * <p>
+     * The data is stored as a marshalled Parcel and is only guaranteed to be readable by the same
+     * version of your application. Data that can't be read is deleted and delivered as
+     * {@code null}. It is also deleted once the fence is unregistered.
+     *
+     * @param context        Context to use for registering the fence
+     * @param name           name of the fence to register. Should be unique
+     * @param awarenessFence The fence description
+     * @param data           data to attach to the fence
+     * @return Completable that completes once the fence is registered or fails if the data could
+     * not be stored. The registration is executed without subscribing to it
+     */
+    public static Completable registerWithStoredData(Context context, String name, AwarenessFence awarenessFence, Bundle data) {
+        return RegisterBackgroundFenceAction.registerWithStoredData(context, name, awarenessFence, data);
+    }
+
+    /**
+     * Registers a background fence with a typed {@link FencePayload} attached. The payload is
+     * encoded into a compact byte array, which keeps the PendingIntent held by the system small
+     * and is cheaper to decode than a {@link Bundle}. It is delivered via
+     * {@link FenceEvent#getPayload()}.
+     *
+     * @param context        Context to use for registering the fence
+     * @param name           name of the fence to register. Should be unique
+     * @param awarenessFence The fence description
+     * @param payload        payload to attach to the fence
+     * @return Completable that completes once the fence is registered. The registration is
+     * executed without subscribing to it
      */
-    public static void registerWithData(Context context, String name, AwarenessFence awarenessFence, @Nullable Bundle data) {
-        RegisterBackgroundFenceAction.registerWithData(context, name, awarenessFence, data);
+    public static Completable registerWithPayload(Context context, String name, AwarenessFence awarenessFence, FencePayload payload) {
+        return RegisterBackgroundFenceAction.registerWithPayload(context, name, awarenessFence, payload);
     }
 
     /**
@@ -91,17 +166,29 @@ public class BackgroundFence {
      * @param context Context to use for unregistering the fence. It does not have to be the same
      *                context that the fence was registered with
      * @param name    name of the fene to unregister.
+     * @return Completable that completes once the fence is unregistered. The unregistration is
+     * executed without subscribing to it
      */
-    public static void unregister(Context context, String name) {
-        UnregisterBackgroundFenceAction.unregister(context, name);
+    public static Completable unregister(Context context, String name) {
+        if (CompositeBackgroundFenceAction.contains(context, name)) {
+            return CompositeBackgroundFenceAction.unregister(context, name);
+        }
+        return UnregisterBackgroundFenceAction.unregister(context, name);
     }
 
     /**
      * Queries the currently registered fences and delivers the result as a {@link Single}.
      * <p>
-     * Please note that the result of this query will contain all fences registered for your
-     * GoogleApiClient API key. This means that also fences you manually registered for your
-     * application or {@link ObservableFence}s you registered will be returned.
+     * The result is answered from a local mirror of the registered fences which is kept up to date
+     * by registering and unregistering fences and by the state updates your {@link FenceReceiver}
+     * receives. The Awareness API is only queried if the mirror might be out of date, e.g. before
+     * the first query of the application process, after a failed fence update or after an update
+     * for an unknown fence was received. Use {@link #refresh(Context)} to always query the
+     * Awareness API.
+     * <p>
+     * Fences registered internally by this library, e.g. the leaves of {@link FenceExpression}s
+     * or the geofences of {@link ShardedGeofences}, are not contained in the result. Neither are
+     * {@link FenceExpression}s, which are only evaluated locally.
      *
      * @param context Context to use for the query operation
      * @return Single {@link FenceStateMap} describing all the fences that are currently registered.
@@ -109,4 +196,66 @@ public class BackgroundFence {
     public static Single<FenceStateMap> query(Context context) {
         return QueryBackgroundFenceSingle.query(context);
     }
+
+    /**
+     * Queries the states of the fences with the given keys and delivers the result as a
+     * {@link Single}. Fences that are not registered are not contained in the result.
+     * <p>
+     * Like {@link #query(Context)} the result is answered from the local mirror of the registered
+     * fences if possible. Otherwise only the given fences are queried from the Awareness API, which
+     * is considerably cheaper than querying all fences when many fences are registered.
+     *
+     * @param context Context to use for the query operation
+     * @param keys    keys of the fences to query
+     * @return Single {@link FenceStateMap} describing the given fences that are registered
+     */
+    public static Single<FenceStateMap> query(Context context, Collection<String> keys) {
+        return QueryBackgroundFenceSingle.query(context, keys);
+    }
+
+    /**
+     * Queries the states of the fences with the given keys like
+     * {@link #query(Context, Collection)} and emits the state of every registered fence.
+     *
+     * @param context Context to use for the query operation
+     * @param keys    keys of the fences to query
+     * @return Flowable of the {@link FenceState}s of the given fences that are registered
+     */
+    public static Flowable<FenceState> queryStates(Context context, Collection<String> keys) {
+        return query(context, keys)
+                .toFlowable()
+                .flatMapIterable(stateMap -> {
+                    List<FenceState> states = new ArrayList<>(stateMap.getFenceKeys().size());
+                    for (String key : stateMap.getFenceKeys()) {
+                        states.add(stateMap.getFenceState(key));
+                    }
+                    return states;
+                });
+    }
+
+    /**
+     * Queries the currently registered fences from the Awareness API and delivers the result as a
+     * {@link Single}. The result also updates the local mirror used by {@link #query(Context)}.
+     * <p>
+     * Please note that the result of this query will contain all fences registered for your
+     * GoogleApiClient API key. This means that also fences you manually registered for your
+     * application or {@link ObservableFence}s you registered will be returned. Fences registered
+     * internally by this library are not returned.
+     *
+     * @param context Context to use for the query operation
+     * @return Single {@link FenceStateMap} describing all the fences that are currently registered.
+     */
+    public static Single<FenceStateMap> refresh(Context context) {
+        return QueryBackgroundFenceSingle.refresh(context);
+    }
+
+    /**
+     * Sets the {@link AwarenessTransport} used for all operations of {@link BackgroundFence}s and
+     * {@link ObservableFence}s. By default all operations are executed through Google Play Services.
+     *
+     * @param transport transport to use for all following fence operations
+     */
+    public static void setTransport(AwarenessTransport transport) {
+        FenceTransport.set(transport);
+    }
 }
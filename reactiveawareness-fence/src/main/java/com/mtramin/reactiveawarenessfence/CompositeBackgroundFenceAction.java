@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.awareness.fence.AwarenessFence;
+import com.google.android.gms.awareness.fence.FenceUpdateRequest;
+import com.mtramin.reactiveawareness2.AwarenessConnection;
+import com.mtramin.reactiveawareness2.RequestRecorder;
+import com.mtramin.servant2.ClientException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
+
+/**
+ * Registers and unregisters {@link FenceExpression}s as background fences. Only the leaves that
+ * are not yet registered for another expression or whose fence changed are added, and leaves that
+ * are not used anymore are removed from the Awareness API. Expressions are only stored once their
+ * leaves were updated successfully.
+ */
+class CompositeBackgroundFenceAction implements CompletableOnSubscribe {
+
+    /**
+     * Names of expressions whose registration is pending, by the number of pending registrations
+     */
+    private static final Map<String, Integer> pending = new HashMap<>();
+
+    private final RequestRecorder metrics = RequestRecorder.get(FenceMetrics.REGISTER);
+
+    private final Context context;
+    private final String name;
+    private final FenceExpression expression;
+    private final CompositeFenceStore.LeafChanges changes;
+
+    private CompletableEmitter emitter;
+    private long connectStart;
+
+    private CompositeBackgroundFenceAction(Context context,
+                                           String name,
+                                           @Nullable FenceExpression expression,
+                                           CompositeFenceStore.LeafChanges changes) {
+        this.context = context;
+        this.name = name;
+        this.expression = expression;
+        this.changes = changes;
+    }
+
+    @Override
+    public void subscribe(CompletableEmitter emitter) throws Exception {
+        this.emitter = emitter;
+        this.connectStart = System.nanoTime();
+
+        FenceTransport.get().connect(context)
+                .subscribe(
+                        this::onClientConnected,
+                        throwable -> {
+                            metrics.recordError();
+                            onClientError(throwable);
+                        }
+                );
+    }
+
+    /**
+     * Registers the given expression to receive background updates.
+     *
+     * @param context    context to use
+     * @param name       name of the expression
+     * @param expression expression to register
+     * @return Completable of the update of the leaves
+     */
+    static Completable register(Context context, String name, FenceExpression expression) {
+        synchronized (pending) {
+            Integer count = pending.get(name);
+            pending.put(name, count == null ? 1 : count + 1);
+        }
+
+        return update(context.getApplicationContext(), name, expression);
+    }
+
+    /**
+     * @param context context to use
+     * @param name    name of the expression
+     * @return {@code true} if an expression with the given name is registered or its registration
+     * is pending
+     */
+    static boolean contains(Context context, String name) {
+        synchronized (pending) {
+            if (pending.containsKey(name)) {
+                return true;
+            }
+        }
+        return new CompositeFenceStore(context.getApplicationContext()).contains(name);
+    }
+
+    /**
+     * Unregisters the expression with the given name
+     *
+     * @param context context to use
+     * @param name    name of the expression
+     * @return Completable of the update of the leaves
+     */
+    static Completable unregister(Context context, String name) {
+        return update(context.getApplicationContext(), name, null);
+    }
+
+    /**
+     * Updates the leaves of the Awareness API and stores the expression once they were updated.
+     * The changes of the leaves are computed once the update is executed, as leaves are shared
+     * between expressions and all leaf updates are ordered in one lane.
+     */
+    private static Completable update(Context context, String name, @Nullable FenceExpression expression) {
+        Completable operation = Completable.defer(() -> {
+            CompositeFenceStore store = new CompositeFenceStore(context);
+            CompositeFenceStore.LeafChanges changes = store.diff(name, expression);
+            if (changes.isEmpty()) {
+                return Completable.fromAction(() -> store.commit(name, expression, changes));
+            }
+            return Completable.create(new CompositeBackgroundFenceAction(context, name, expression, changes));
+        });
+
+        if (expression != null) {
+            operation = operation.doAfterTerminate(() -> onRegistrationFinished(name));
+        }
+        return FenceOperationQueue.enqueue(FenceOperationQueue.COMPOSITE_KEY, operation);
+    }
+
+    private static void onRegistrationFinished(String name) {
+        synchronized (pending) {
+            int count = pending.get(name);
+            if (count == 1) {
+                pending.remove(name);
+            } else {
+                pending.put(name, count - 1);
+            }
+        }
+    }
+
+    private void onClientConnected(AwarenessConnection connection) {
+        metrics.recordConnect(System.nanoTime() - connectStart);
+
+        FenceUpdateRequest.Builder builder = new FenceUpdateRequest.Builder();
+        for (Map.Entry<String, AwarenessFence> leaf : changes.added.entrySet()) {
+            String fenceKey = CompositeFenceStore.getLeafFenceKey(leaf.getKey());
+            builder.addFence(fenceKey, leaf.getValue(), FenceReceiver.createPendingIntent(context, fenceKey.hashCode(), null));
+        }
+        for (String leaf : changes.removed) {
+            builder.removeFence(CompositeFenceStore.getLeafFenceKey(leaf));
+        }
+
+        long requestStart = System.nanoTime();
+        connection.updateFences(builder.build())
+                .subscribe(
+                        status -> {
+                            metrics.recordRequest(System.nanoTime() - requestStart);
+                            metrics.recordStatus(status.getStatusCode());
+                            if (status.isSuccess()) {
+                                onLeavesUpdated();
+                                emitter.onComplete();
+                            } else {
+                                onClientError(new ClientException("Updating leaf fences failed. " + status.getStatusMessage()));
+                            }
+                            connection.disconnect();
+                        },
+                        throwable -> {
+                            metrics.recordError();
+                            onClientError(throwable);
+                            connection.disconnect();
+                        }
+                );
+    }
+
+    private void onLeavesUpdated() {
+        new CompositeFenceStore(context).commit(name, expression, changes);
+
+        FenceRegistry registry = new FenceRegistry(context);
+        for (Map.Entry<String, String> leaf : changes.hashes.entrySet()) {
+            registry.onRegistered(CompositeFenceStore.getLeafFenceKey(leaf.getKey()), leaf.getValue());
+        }
+
+        List<String> removed = new ArrayList<>(changes.removed.size());
+        for (String leaf : changes.removed) {
+            removed.add(CompositeFenceStore.getLeafFenceKey(leaf));
+        }
+        registry.onUnregistered(removed);
+    }
+
+    private void onClientError(Throwable throwable) {
+        new FenceRegistry(context).invalidate();
+        Log.e("ReactiveAwareness", "Error when updating Fence in GoogleApiClient " + throwable.getLocalizedMessage());
+        emitter.onError(throwable);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.awareness.fence.AwarenessFence;
+import com.google.android.gms.awareness.fence.FenceState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists the {@link FenceExpression}s registered as background fences together with the states
+ * of their leaves, so that the expressions can be evaluated when a leaf fence changes, even after
+ * the application process was restarted.
+ */
+class CompositeFenceStore {
+
+    private static final String PREFERENCES = "ReactiveAwarenessCompositeFences";
+    private static final String LEAF_FENCE_PREFIX = "ReactiveAwarenessLeaf_";
+    private static final String KEY_EXPRESSION = "expression:";
+    private static final String KEY_STATE = "state:";
+    private static final String KEY_LEAF = "leaf:";
+    private static final String KEY_LEAF_HASH = "leafHash:";
+
+    private static final Object lock = new Object();
+    private static final Map<String, FenceExpression> parsedExpressions = new ConcurrentHashMap<>();
+
+    private final SharedPreferences preferences;
+
+    CompositeFenceStore(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @param leafKey key of a leaf
+     * @return key of the fence registered with the Awareness API for the leaf
+     */
+    static String getLeafFenceKey(String leafKey) {
+        return LEAF_FENCE_PREFIX + leafKey;
+    }
+
+    /**
+     * @param fenceKey key of a fence registered with the Awareness API
+     * @return the key of the leaf or {@code null} if the fence is not a leaf
+     */
+    static String getLeafKey(String fenceKey) {
+        return fenceKey.startsWith(LEAF_FENCE_PREFIX) ? fenceKey.substring(LEAF_FENCE_PREFIX.length()) : null;
+    }
+
+    boolean contains(String name) {
+        return preferences.contains(KEY_EXPRESSION + name);
+    }
+
+    /**
+     * Computes the leaves that have to be registered with and unregistered from the Awareness API
+     * to store the given expression with the given name. Leaves whose fence changed are registered
+     * again. Nothing is stored until the changes are committed with
+     * {@link #commit(String, FenceExpression, LeafChanges)}.
+     *
+     * @param name       name of the expression
+     * @param expression expression to store or {@code null} to remove the expression
+     * @return leaves that have to be registered and unregistered with the Awareness API
+     */
+    LeafChanges diff(String name, @Nullable FenceExpression expression) {
+        synchronized (lock) {
+            Map<String, AwarenessFence> before = collectLeaves(null);
+            Map<String, AwarenessFence> after = collectLeaves(name);
+
+            LeafChanges changes = new LeafChanges();
+            if (expression != null) {
+                // fences of the leaves are only known to the new expression
+                Map<String, AwarenessFence> fences = new HashMap<>();
+                expression.collectLeaves(fences);
+                for (Map.Entry<String, AwarenessFence> leaf : fences.entrySet()) {
+                    String hash = FenceRegistry.hash(leaf.getValue());
+                    if (!before.containsKey(leaf.getKey()) || !hash.equals(preferences.getString(KEY_LEAF_HASH + leaf.getKey(), null))) {
+                        changes.added.put(leaf.getKey(), leaf.getValue());
+                        changes.hashes.put(leaf.getKey(), hash);
+                    }
+                }
+                after.putAll(fences);
+            }
+
+            for (String leaf : before.keySet()) {
+                if (!after.containsKey(leaf)) {
+                    changes.removed.add(leaf);
+                }
+            }
+            return changes;
+        }
+    }
+
+    /**
+     * Stores the expression with the given name once its leaves were updated with the Awareness
+     * API, replacing a previous expression with that name. The state of the expression is evaluated
+     * from the stored states of its leaves that were not registered again, so that only changes of
+     * that state are delivered once the leaves update.
+     *
+     * @param name       name of the expression
+     * @param expression expression to store or {@code null} to remove the expression
+     * @param changes    changes of the leaves computed by {@link #diff(String, FenceExpression)}
+     */
+    void commit(String name, @Nullable FenceExpression expression, LeafChanges changes) {
+        synchronized (lock) {
+            SharedPreferences.Editor editor = preferences.edit();
+            if (expression == null) {
+                editor.remove(KEY_EXPRESSION + name)
+                        .remove(KEY_STATE + name);
+            } else {
+                editor.putString(KEY_EXPRESSION + name, expression.getCanonical());
+                parsedExpressions.put(expression.getCanonical(), expression);
+
+                int state = expression.evaluate(getLeafStates(changes.hashes.keySet()));
+                if (state == FenceState.UNKNOWN) {
+                    editor.remove(KEY_STATE + name);
+                } else {
+                    editor.putInt(KEY_STATE + name, state);
+                }
+            }
+
+            for (Map.Entry<String, String> leaf : changes.hashes.entrySet()) {
+                editor.remove(KEY_LEAF + leaf.getKey())
+                        .putString(KEY_LEAF_HASH + leaf.getKey(), leaf.getValue());
+            }
+            for (String leaf : changes.removed) {
+                editor.remove(KEY_LEAF + leaf)
+                        .remove(KEY_LEAF_HASH + leaf);
+            }
+            editor.apply();
+        }
+    }
+
+    /**
+     * Stores the new state of the given leaf and evaluates all expressions using it.
+     *
+     * @param leafKey key of the leaf
+     * @param state   new state of the leaf
+     * @return new states of all expressions that changed their state by their names
+     */
+    Map<String, Boolean> onLeafUpdate(String leafKey, int state) {
+        synchronized (lock) {
+            SharedPreferences.Editor editor = preferences.edit()
+                    .putInt(KEY_LEAF + leafKey, state);
+
+            Map<String, Integer> leafStates = new HashMap<>();
+            Map<String, FenceExpression> expressions = new LinkedHashMap<>();
+            for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                String key = entry.getKey();
+                if (key.startsWith(KEY_LEAF)) {
+                    leafStates.put(key.substring(KEY_LEAF.length()), (Integer) entry.getValue());
+                } else if (key.startsWith(KEY_EXPRESSION)) {
+                    expressions.put(key.substring(KEY_EXPRESSION.length()), parse((String) entry.getValue()));
+                }
+            }
+            leafStates.put(leafKey, state);
+
+            Map<String, Boolean> changed = new LinkedHashMap<>();
+            Map<String, AwarenessFence> leaves = new HashMap<>();
+            for (Map.Entry<String, FenceExpression> entry : expressions.entrySet()) {
+                leaves.clear();
+                entry.getValue().collectLeaves(leaves);
+                if (!leaves.containsKey(leafKey)) {
+                    continue;
+                }
+
+                String name = entry.getKey();
+                int newState = entry.getValue().evaluate(leafStates);
+                if (newState != FenceState.UNKNOWN && newState != preferences.getInt(KEY_STATE + name, FenceState.UNKNOWN)) {
+                    editor.putInt(KEY_STATE + name, newState);
+                    changed.put(name, newState == FenceState.TRUE);
+                }
+            }
+
+            editor.apply();
+            return changed;
+        }
+    }
+
+    /**
+     * @param excluded keys of leaves whose states are not collected
+     * @return stored states of all leaves by their keys
+     */
+    private Map<String, Integer> getLeafStates(Set<String> excluded) {
+        Map<String, Integer> leafStates = new HashMap<>();
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(KEY_LEAF)) {
+                String leafKey = key.substring(KEY_LEAF.length());
+                if (!excluded.contains(leafKey)) {
+                    leafStates.put(leafKey, (Integer) entry.getValue());
+                }
+            }
+        }
+        return leafStates;
+    }
+
+    /**
+     * @param excluded name of an expression whose leaves are not collected
+     * @return leaves of all stored expressions
+     */
+    private Map<String, AwarenessFence> collectLeaves(@Nullable String excluded) {
+        String excludedKey = excluded == null ? null : KEY_EXPRESSION + excluded;
+        Map<String, AwarenessFence> leaves = new HashMap<>();
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            if (entry.getKey().startsWith(KEY_EXPRESSION) && !entry.getKey().equals(excludedKey)) {
+                parse((String) entry.getValue()).collectLeaves(leaves);
+            }
+        }
+        return leaves;
+    }
+
+    private static FenceExpression parse(String canonical) {
+        FenceExpression expression = parsedExpressions.get(canonical);
+        if (expression == null) {
+            expression = FenceExpression.parse(canonical);
+            parsedExpressions.put(canonical, expression);
+        }
+        return expression;
+    }
+
+    /**
+     * Leaves to register with and to unregister from the Awareness API.
+     */
+    static class LeafChanges {
+        final Map<String, AwarenessFence> added = new HashMap<>();
+        final Map<String, String> hashes = new HashMap<>();
+        final List<String> removed = new ArrayList<>();
+
+        boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+}
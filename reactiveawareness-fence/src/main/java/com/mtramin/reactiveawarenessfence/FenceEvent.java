@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.awareness.fence.FenceState;
+
+/**
+ * State update of a background fence delivered to
+ * {@link FenceReceiver#onUpdate(Context, FenceEvent)}.
+ * <p>
+ * The data attached to the fence is only decoded once {@link #getData()} is called, so receivers
+ * that don't need it don't pay for unparcelling it.
+ */
+public final class FenceEvent {
+
+    private final Context context;
+    private final String key;
+    private final int currentState;
+    private final int previousState;
+    private final long lastUpdateTimeMillis;
+    @Nullable
+    private final Intent intent;
+
+    private boolean dataDecoded;
+    private Bundle data;
+    private boolean payloadDecoded;
+    private FencePayload payload;
+
+    FenceEvent(Context context, String key, int currentState, int previousState, long lastUpdateTimeMillis, @Nullable Intent intent) {
+        this.context = context;
+        this.key = key;
+        this.currentState = currentState;
+        this.previousState = previousState;
+        this.lastUpdateTimeMillis = lastUpdateTimeMillis;
+        this.intent = intent;
+    }
+
+    /**
+     * @return the key/name of the fence that received an update
+     */
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return {@code true} if the fence condition is valid
+     */
+    public boolean getState() {
+        return currentState == FenceState.TRUE;
+    }
+
+    /**
+     * @return the current {@link FenceState} of the fence
+     */
+    public int getCurrentState() {
+        return currentState;
+    }
+
+    /**
+     * @return the previous {@link FenceState} of the fence, {@link FenceState#UNKNOWN} for fences
+     * that are evaluated locally
+     */
+    public int getPreviousState() {
+        return previousState;
+    }
+
+    /**
+     * @return time of the state change in milliseconds since epoch
+     */
+    public long getLastUpdateTimeMillis() {
+        return lastUpdateTimeMillis;
+    }
+
+    /**
+     * Decodes the data attached to the fence on first access.
+     *
+     * @return bundle with additional data that was attached to this fence
+     */
+    @Nullable
+    public synchronized Bundle getData() {
+        if (!dataDecoded) {
+            dataDecoded = true;
+            data = decodeData();
+        }
+        return data;
+    }
+
+    /**
+     * Decodes the payload attached to the fence on first access.
+     *
+     * @return payload that was attached to this fence via
+     * {@link BackgroundFence#registerWithPayload(Context, String, com.google.android.gms.awareness.fence.AwarenessFence, FencePayload)}
+     */
+    @Nullable
+    public synchronized FencePayload getPayload() {
+        if (!payloadDecoded) {
+            payloadDecoded = true;
+            byte[] encoded = intent == null ? null : intent.getByteArrayExtra(FenceReceiver.EXTRA_PAYLOAD);
+            payload = encoded == null ? null : FencePayload.decode(encoded);
+        }
+        return payload;
+    }
+
+    @Nullable
+    private Bundle decodeData() {
+        if (intent == null) {
+            return null;
+        }
+
+        String payloadId = intent.getStringExtra(FenceReceiver.EXTRA_PAYLOAD_ID);
+        if (payloadId != null) {
+            return new FencePayloadStore(context).get(payloadId);
+        }
+        return intent.getBundleExtra(FenceReceiver.EXTRA_BUNDLE);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import com.google.android.gms.awareness.fence.AwarenessFence;
+import com.google.android.gms.awareness.fence.FenceState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Description of a background fence that is composed of shared leaf fences.
+ * <p>
+ * Other than an {@link AwarenessFence} tree, which is registered with the Awareness API as a whole,
+ * only the leaves of a FenceExpression are registered. Leaves with the same key are registered
+ * once, even if they are used in several expressions, and the expressions are evaluated locally
+ * once a leaf changes its state. This keeps the number of fences registered with the Awareness API
+ * and the number of callbacks low when many fences share the same conditions.
+ * <p>
+ * Expressions are canonicalized: nested combinations of the same kind are flattened, children are
+ * ordered and duplicates as well as double negations are removed.
+ *
+ * @see BackgroundFence#register(android.content.Context, String, FenceExpression)
+ */
+public abstract class FenceExpression {
+
+    private static final char LEAF = 'L';
+    private static final char AND = 'A';
+    private static final char OR = 'O';
+    private static final char NOT = 'N';
+
+    private final String canonical;
+
+    private FenceExpression(String canonical) {
+        this.canonical = canonical;
+    }
+
+    /**
+     * Creates a leaf of an expression. All leaves with the same key have to describe the same
+     * fence, as only one of them will be registered.
+     *
+     * @param key   unique key describing the fence, e.g. "home" for a {@code LocationFence.in()}
+     *              around the users home
+     * @param fence fence to register for this leaf
+     * @return leaf expression
+     */
+    public static FenceExpression leaf(String key, AwarenessFence fence) {
+        return new Leaf(key, fence);
+    }
+
+    /**
+     * @param expressions expressions to combine
+     * @return expression that is true while all of the given expressions are true
+     */
+    public static FenceExpression and(FenceExpression... expressions) {
+        return and(Arrays.asList(expressions));
+    }
+
+    /**
+     * @param expressions expressions to combine
+     * @return expression that is true while all of the given expressions are true
+     */
+    public static FenceExpression and(Collection<FenceExpression> expressions) {
+        return combine(AND, expressions);
+    }
+
+    /**
+     * @param expressions expressions to combine
+     * @return expression that is true while any of the given expressions is true
+     */
+    public static FenceExpression or(FenceExpression... expressions) {
+        return or(Arrays.asList(expressions));
+    }
+
+    /**
+     * @param expressions expressions to combine
+     * @return expression that is true while any of the given expressions is true
+     */
+    public static FenceExpression or(Collection<FenceExpression> expressions) {
+        return combine(OR, expressions);
+    }
+
+    /**
+     * @param expression expression to negate
+     * @return expression that is true while the given expression is false
+     */
+    public static FenceExpression not(FenceExpression expression) {
+        if (expression instanceof Not) {
+            return ((Not) expression).child;
+        }
+        return new Not(expression);
+    }
+
+    private static FenceExpression combine(char operator, Collection<FenceExpression> expressions) {
+        if (expressions.isEmpty()) {
+            throw new IllegalArgumentException("At least one expression has to be combined");
+        }
+
+        // flattens and orders the children, duplicates are removed by their canonical form
+        Map<String, FenceExpression> children = new TreeMap<>();
+        for (FenceExpression expression : expressions) {
+            if (expression instanceof Combination && ((Combination) expression).operator == operator) {
+                for (FenceExpression child : ((Combination) expression).children) {
+                    children.put(child.canonical, child);
+                }
+            } else {
+                children.put(expression.canonical, expression);
+            }
+        }
+
+        if (children.size() == 1) {
+            return children.values().iterator().next();
+        }
+        return new Combination(operator, new ArrayList<>(children.values()));
+    }
+
+    /**
+     * Restores an expression from its canonical form. The leaves of the restored expression don't
+     * contain their {@link AwarenessFence}s.
+     *
+     * @param canonical canonical form of the expression
+     * @return the restored expression
+     */
+    static FenceExpression parse(String canonical) {
+        Parser parser = new Parser(canonical);
+        FenceExpression expression = parser.parse();
+        if (parser.position != canonical.length()) {
+            throw new IllegalArgumentException("Invalid fence expression: " + canonical);
+        }
+        return expression;
+    }
+
+    /**
+     * @return unique representation of this expression, equal for all equivalent expressions
+     */
+    String getCanonical() {
+        return canonical;
+    }
+
+    /**
+     * Adds the fences of all leaves of this expression to the given map by their keys
+     *
+     * @param leaves map to add the leaves to
+     */
+    abstract void collectLeaves(Map<String, AwarenessFence> leaves);
+
+    /**
+     * Evaluates this expression with the given states of its leaves
+     *
+     * @param leafStates states of the leaves by their keys. Missing leaves are unknown
+     * @return {@link FenceState#TRUE}, {@link FenceState#FALSE} or {@link FenceState#UNKNOWN}
+     */
+    abstract int evaluate(Map<String, Integer> leafStates);
+
+    private static class Leaf extends FenceExpression {
+
+        private final String key;
+        private final AwarenessFence fence;
+
+        private Leaf(String key, AwarenessFence fence) {
+            super(LEAF + String.valueOf(key.length()) + ':' + key);
+            this.key = key;
+            this.fence = fence;
+        }
+
+        @Override
+        void collectLeaves(Map<String, AwarenessFence> leaves) {
+            leaves.put(key, fence);
+        }
+
+        @Override
+        int evaluate(Map<String, Integer> leafStates) {
+            Integer state = leafStates.get(key);
+            return state == null ? FenceState.UNKNOWN : state;
+        }
+    }
+
+    private static class Combination extends FenceExpression {
+
+        private final char operator;
+        private final List<FenceExpression> children;
+
+        private Combination(char operator, List<FenceExpression> children) {
+            super(canonical(operator, children));
+            this.operator = operator;
+            this.children = Collections.unmodifiableList(children);
+        }
+
+        private static String canonical(char operator, List<FenceExpression> children) {
+            StringBuilder builder = new StringBuilder()
+                    .append(operator)
+                    .append(children.size())
+                    .append(':');
+            for (FenceExpression child : children) {
+                builder.append(child.canonical);
+            }
+            return builder.toString();
+        }
+
+        @Override
+        void collectLeaves(Map<String, AwarenessFence> leaves) {
+            for (FenceExpression child : children) {
+                child.collectLeaves(leaves);
+            }
+        }
+
+        @Override
+        int evaluate(Map<String, Integer> leafStates) {
+            // TRUE for AND and FALSE for OR decide the combination only if all children agree
+            int deciding = operator == AND ? FenceState.FALSE : FenceState.TRUE;
+            int result = operator == AND ? FenceState.TRUE : FenceState.FALSE;
+
+            for (FenceExpression child : children) {
+                int state = child.evaluate(leafStates);
+                if (state == deciding) {
+                    return deciding;
+                }
+                if (state == FenceState.UNKNOWN) {
+                    result = FenceState.UNKNOWN;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Not extends FenceExpression {
+
+        private final FenceExpression child;
+
+        private Not(FenceExpression child) {
+            super(NOT + child.canonical);
+            this.child = child;
+        }
+
+        @Override
+        void collectLeaves(Map<String, AwarenessFence> leaves) {
+            child.collectLeaves(leaves);
+        }
+
+        @Override
+        int evaluate(Map<String, Integer> leafStates) {
+            switch (child.evaluate(leafStates)) {
+                case FenceState.TRUE:
+                    return FenceState.FALSE;
+                case FenceState.FALSE:
+                    return FenceState.TRUE;
+                default:
+                    return FenceState.UNKNOWN;
+            }
+        }
+    }
+
+    private static class Parser {
+
+        private final String input;
+        private int position;
+
+        private Parser(String input) {
+            this.input = input;
+        }
+
+        FenceExpression parse() {
+            char type = input.charAt(position++);
+            switch (type) {
+                case LEAF: {
+                    int length = readNumber();
+                    String key = input.substring(position, position + length);
+                    position += length;
+                    return new Leaf(key, null);
+                }
+                case AND:
+                case OR: {
+                    int count = readNumber();
+                    List<FenceExpression> children = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        children.add(parse());
+                    }
+                    return new Combination(type, children);
+                }
+                case NOT:
+                    return new Not(parse());
+                default:
+                    throw new IllegalArgumentException("Invalid fence expression: " + input);
+            }
+        }
+
+        private int readNumber() {
+            int separator = input.indexOf(':', position);
+            int number = Integer.parseInt(input.substring(position, separator));
+            position = separator + 1;
+            return number;
+        }
+    }
+}
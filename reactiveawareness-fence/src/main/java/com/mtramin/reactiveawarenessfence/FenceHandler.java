@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+/**
+ * Handles state updates of background fences routed to it by {@link FenceHandlers}.
+ * <p>
+ * Handlers are called on a worker thread while the {@link FenceReceiver} keeps the broadcast
+ * alive, so they may block for a short time but have to finish within the broadcast time limit.
+ */
+public interface FenceHandler {
+
+    /**
+     * Called once a fence this handler is registered for changed its state.
+     *
+     * @param context context to use
+     * @param event   the state update of the fence
+     */
+    void onUpdate(@NonNull Context context, @NonNull FenceEvent event);
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry that routes background fence updates to {@link FenceHandler}s by fence name.
+ * <p>
+ * Handlers are registered either for an exact fence name or for a prefix of fence names, e.g.
+ * in {@code Application.onCreate()}. On every update the {@link FenceReceiver} looks up the
+ * handler for the name of the fence: a handler registered for the exact name is preferred,
+ * otherwise the handler of the longest matching prefix is used. Matching handlers are run in
+ * parallel on a worker pool. Updates without a matching handler are delivered to
+ * {@link FenceReceiver#onUpdate(android.content.Context, FenceEvent)} as before.
+ * <p>
+ * Lookups use a hash map for exact names and a trie for prefixes that are rebuilt on every
+ * registration, so the cost of a lookup does not grow with the number of registered handlers.
+ */
+public final class FenceHandlers {
+
+    private static final Object LOCK = new Object();
+    private static final Map<String, FenceHandler> exactHandlers = new HashMap<>();
+    private static final Map<String, FenceHandler> prefixHandlers = new HashMap<>();
+
+    private static volatile Routes routes = new Routes(new HashMap<>(), null);
+    private static volatile Executor executor;
+
+    private FenceHandlers() {
+    }
+
+    /**
+     * Registers a handler for the fence with the given name. Replaces the handler previously
+     * registered for this name.
+     *
+     * @param name    name of the fence
+     * @param handler handler to call on updates of the fence
+     */
+    public static void register(String name, FenceHandler handler) {
+        synchronized (LOCK) {
+            exactHandlers.put(name, handler);
+            rebuild();
+        }
+    }
+
+    /**
+     * Registers a handler for all fences whose name starts with the given prefix. Replaces the
+     * handler previously registered for this prefix.
+     *
+     * @param prefix  prefix of the fence names
+     * @param handler handler to call on updates of the fences
+     */
+    public static void registerPrefix(String prefix, FenceHandler handler) {
+        synchronized (LOCK) {
+            prefixHandlers.put(prefix, handler);
+            rebuild();
+        }
+    }
+
+    /**
+     * Removes the handler registered for the given fence name.
+     *
+     * @param name name of the fence
+     */
+    public static void unregister(String name) {
+        synchronized (LOCK) {
+            exactHandlers.remove(name);
+            rebuild();
+        }
+    }
+
+    /**
+     * Removes the handler registered for the given prefix.
+     *
+     * @param prefix prefix of the fence names
+     */
+    public static void unregisterPrefix(String prefix) {
+        synchronized (LOCK) {
+            prefixHandlers.remove(prefix);
+            rebuild();
+        }
+    }
+
+    /**
+     * Removes all registered handlers.
+     */
+    public static void clear() {
+        synchronized (LOCK) {
+            exactHandlers.clear();
+            prefixHandlers.clear();
+            rebuild();
+        }
+    }
+
+    /**
+     * Sets the executor handlers are run on. By default a fixed pool with one thread per
+     * available processor is used.
+     *
+     * @param executor executor to run handlers on
+     */
+    public static void setExecutor(Executor executor) {
+        FenceHandlers.executor = executor;
+    }
+
+    /**
+     * @param name name of the fence
+     * @return handler to call for updates of the fence or {@code null} if there is none
+     */
+    @Nullable
+    static FenceHandler find(String name) {
+        return routes.find(name);
+    }
+
+    /**
+     * @return executor to run handlers on
+     */
+    static Executor getExecutor() {
+        Executor current = executor;
+        if (current == null) {
+            synchronized (LOCK) {
+                if (executor == null) {
+                    executor = createDefaultExecutor();
+                }
+                current = executor;
+            }
+        }
+        return current;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "ReactiveAwarenessFenceHandler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    private static void rebuild() {
+        TrieNode root = null;
+        if (!prefixHandlers.isEmpty()) {
+            root = new TrieNode();
+            for (Map.Entry<String, FenceHandler> entry : prefixHandlers.entrySet()) {
+                TrieNode node = root;
+                String prefix = entry.getKey();
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.childOrCreate(prefix.charAt(i));
+                }
+                node.handler = entry.getValue();
+            }
+        }
+        routes = new Routes(new HashMap<>(exactHandlers), root);
+    }
+
+    /**
+     * Immutable snapshot of all registered handlers.
+     */
+    private static class Routes {
+
+        private final Map<String, FenceHandler> exact;
+        @Nullable
+        private final TrieNode prefixes;
+
+        private Routes(Map<String, FenceHandler> exact, @Nullable TrieNode prefixes) {
+            this.exact = exact;
+            this.prefixes = prefixes;
+        }
+
+        @Nullable
+        private FenceHandler find(String name) {
+            FenceHandler handler = exact.get(name);
+            if (handler != null || prefixes == null) {
+                return handler;
+            }
+
+            TrieNode node = prefixes;
+            FenceHandler longest = node.handler;
+            for (int i = 0; i < name.length(); i++) {
+                node = node.child(name.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                if (node.handler != null) {
+                    longest = node.handler;
+                }
+            }
+            return longest;
+        }
+    }
+
+    /**
+     * Node of the prefix trie. Children are kept in sorted arrays to keep lookups cheap.
+     */
+    private static class TrieNode {
+
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private FenceHandler handler;
+
+        @Nullable
+        private TrieNode child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private TrieNode childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+
+            TrieNode node = new TrieNode();
+            newKeys[insert] = c;
+            newChildren[insert] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import com.mtramin.reactiveawareness2.ReactiveAwarenessMetrics;
+
+/**
+ * Names under which fence operations are recorded in {@link ReactiveAwarenessMetrics}.
+ */
+final class FenceMetrics {
+
+    static final String REGISTER = "FENCE_REGISTER";
+    static final String UNREGISTER = "FENCE_UNREGISTER";
+    static final String QUERY = "FENCE_QUERY";
+    static final String OBSERVABLE = "FENCE_OBSERVABLE";
+    static final String SHARD = "FENCE_SHARD";
+
+    private FenceMetrics() {
+    }
+}
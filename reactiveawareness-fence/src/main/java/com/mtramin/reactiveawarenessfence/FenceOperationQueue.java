@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+
+/**
+ * Executes fence operations in the order they were issued per fence name, while operations on
+ * different names run in parallel.
+ * <p>
+ * Every operation is started right away, or as soon as the previous operation on the same name
+ * finished, whether it succeeded or not. The returned {@link Completable} reports the result of the
+ * operation and can be subscribed to any number of times without executing it again. Only names
+ * with pending operations are kept.
+ */
+final class FenceOperationQueue {
+
+    /**
+     * Name all updates of the leaves of {@link FenceExpression}s are ordered by, as expressions
+     * with different names share their leaves.
+     */
+    static final String COMPOSITE_KEY = "ReactiveAwarenessCompositeFences";
+
+    private static final Map<String, Completable> pending = new HashMap<>();
+
+    private FenceOperationQueue() {
+    }
+
+    /**
+     * Starts the given operation once all previously enqueued operations on the same name
+     * finished.
+     *
+     * @param name      name of the fence the operation affects
+     * @param operation the operation
+     * @return Completable of the result of the operation
+     */
+    static Completable enqueue(String name, Completable operation) {
+        Observable<Object> result;
+        Completable completable;
+        synchronized (pending) {
+            Completable previous = pending.get(name);
+            Completable chained = previous == null
+                    ? operation
+                    : previous.onErrorComplete().andThen(operation);
+
+            result = chained.toObservable().cache();
+            completable = Completable.fromObservable(result);
+            pending.put(name, completable);
+        }
+
+        Completable finished = completable;
+        result.subscribe(
+                ignored -> {
+                },
+                throwable -> onFinished(name, finished),
+                () -> onFinished(name, finished)
+        );
+        return completable;
+    }
+
+    private static void onFinished(String name, Completable completable) {
+        synchronized (pending) {
+            if (pending.get(name) == completable) {
+                pending.remove(name);
+            }
+        }
+    }
+}
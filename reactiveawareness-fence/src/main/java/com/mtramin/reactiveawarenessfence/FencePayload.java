@@ -0,0 +1,341 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Typed payload that can be attached to a background fence via
+ * {@link BackgroundFence#registerWithPayload(android.content.Context, String, com.google.android.gms.awareness.fence.AwarenessFence, FencePayload)}.
+ * <p>
+ * A payload only holds booleans, ints, longs, doubles and Strings. It is encoded into a compact
+ * byte array instead of a {@link android.os.Bundle}, so the PendingIntent held by the system stays
+ * small and decoding it on every fence callback is cheap.
+ * <p>
+ * Create payloads through a {@link Builder}.
+ */
+public final class FencePayload {
+
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_STRING = 5;
+
+    private static final String CHARSET = "UTF-8";
+
+    private final Map<String, Object> values;
+
+    private FencePayload(Map<String, Object> values) {
+        this.values = values;
+    }
+
+    /**
+     * @return a new builder for a payload
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return keys contained in this payload
+     */
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * @param key key to check
+     * @return {@code true} if this payload holds a value for the given key
+     */
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Double ? (Double) value : defaultValue;
+    }
+
+    @Nullable
+    public String getString(String key) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof FencePayload && values.equals(((FencePayload) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "FencePayload" + values;
+    }
+
+    /**
+     * Encodes this payload. The encoding consists of a version byte and the number of entries
+     * followed by every entry as key, type and value. Counts, lengths, ints and longs are written
+     * as (zigzag) varints.
+     *
+     * @return encoded payload
+     */
+    byte[] encode() {
+        return encode(values);
+    }
+
+    /**
+     * Encodes this payload like {@link #encode()} with its entries ordered by their keys, so that
+     * equal payloads have equal encodings regardless of the order their values were put in.
+     *
+     * @return encoded payload
+     */
+    byte[] encodeSorted() {
+        return encode(new TreeMap<>(values));
+    }
+
+    private static byte[] encode(Map<String, Object> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + values.size() * 8);
+        out.write(VERSION);
+        writeVarint(out, values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            writeString(out, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Boolean) {
+                out.write(TYPE_BOOLEAN);
+                out.write((Boolean) value ? 1 : 0);
+            } else if (value instanceof Integer) {
+                out.write(TYPE_INT);
+                writeVarint(out, zigzag((Integer) value));
+            } else if (value instanceof Long) {
+                out.write(TYPE_LONG);
+                writeVarint(out, zigzag((Long) value));
+            } else if (value instanceof Double) {
+                out.write(TYPE_DOUBLE);
+                long bits = Double.doubleToLongBits((Double) value);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) (bits >>> shift));
+                }
+            } else {
+                out.write(TYPE_STRING);
+                writeString(out, (String) value);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a payload created by {@link #encode()}.
+     *
+     * @param encoded encoded payload
+     * @return decoded payload
+     * @throws IllegalArgumentException if the given data is not a valid payload
+     */
+    static FencePayload decode(byte[] encoded) {
+        Reader in = new Reader(encoded);
+        if (in.readByte() != VERSION) {
+            throw new IllegalArgumentException("Unknown FencePayload version");
+        }
+
+        int size = (int) in.readVarint();
+        Map<String, Object> values = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = in.readString();
+            byte type = in.readByte();
+            switch (type) {
+                case TYPE_BOOLEAN:
+                    values.put(key, in.readByte() != 0);
+                    break;
+                case TYPE_INT:
+                    values.put(key, (int) unzigzag(in.readVarint()));
+                    break;
+                case TYPE_LONG:
+                    values.put(key, unzigzag(in.readVarint()));
+                    break;
+                case TYPE_DOUBLE:
+                    long bits = 0;
+                    for (int b = 0; b < 8; b++) {
+                        bits = (bits << 8) | (in.readByte() & 0xFF);
+                    }
+                    values.put(key, Double.longBitsToDouble(bits));
+                    break;
+                case TYPE_STRING:
+                    values.put(key, in.readString());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown FencePayload type " + type);
+            }
+        }
+        return new FencePayload(values);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes;
+        try {
+            bytes = value.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Sequential reader over an encoded payload.
+     */
+    private static class Reader {
+
+        private final byte[] data;
+        private int position;
+
+        private Reader(byte[] data) {
+            this.data = data;
+        }
+
+        private byte readByte() {
+            if (position >= data.length) {
+                throw new IllegalArgumentException("Truncated FencePayload");
+            }
+            return data[position++];
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in FencePayload");
+        }
+
+        private String readString() {
+            int length = (int) readVarint();
+            if (length < 0 || length > data.length - position) {
+                throw new IllegalArgumentException("Truncated FencePayload");
+            }
+            try {
+                String value = new String(data, position, length, CHARSET);
+                position += length;
+                return value;
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link FencePayload}s. Putting a value for an existing key replaces it.
+     */
+    public static final class Builder {
+
+        private final Map<String, Object> values = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder putBoolean(String key, boolean value) {
+            values.put(checkKey(key), value);
+            return this;
+        }
+
+        public Builder putInt(String key, int value) {
+            values.put(checkKey(key), value);
+            return this;
+        }
+
+        public Builder putLong(String key, long value) {
+            values.put(checkKey(key), value);
+            return this;
+        }
+
+        public Builder putDouble(String key, double value) {
+            values.put(checkKey(key), value);
+            return this;
+        }
+
+        public Builder putString(String key, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Value for " + key + " must not be null");
+            }
+            values.put(checkKey(key), value);
+            return this;
+        }
+
+        private static String checkKey(String key) {
+            if (key == null) {
+                throw new IllegalArgumentException("Key must not be null");
+            }
+            return key;
+        }
+
+        /**
+         * @return payload containing all values put into this builder
+         */
+        public FencePayload build() {
+            return new FencePayload(new LinkedHashMap<>(values));
+        }
+    }
+}
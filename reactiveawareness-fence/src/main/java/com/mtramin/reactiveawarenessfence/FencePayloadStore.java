@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Stores the data of background fences on disk, so that only a reference to the data has to be
+ * attached to the PendingIntent held by the system.
+ * <p>
+ * Data is stored as a marshalled {@link Parcel}, which is only guaranteed to be readable by the
+ * same version of the application.
+ */
+class FencePayloadStore {
+
+    private static final String DIRECTORY = "reactiveawareness_payloads";
+    private static final String TEMPORARY_SUFFIX = ".new";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+
+    FencePayloadStore(Context context) {
+        this.directory = new File(context.getApplicationContext().getFilesDir(), DIRECTORY);
+    }
+
+    /**
+     * @param id   id of the data
+     * @param data data to store
+     * @throws IOException if the data could not be stored. Data stored before for the same id is
+     *                     kept in that case
+     */
+    void put(String id, Bundle data) throws IOException {
+        File file = file(id);
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(data);
+            write(file, parcel.marshall());
+        } catch (IOException e) {
+            Log.e("ReactiveAwareness", "Could not store data of fence " + id, e);
+            throw e;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @param id id of the data
+     * @return the stored data or {@code null} if there is none or it could not be read. Data that
+     * can't be read is removed
+     */
+    @Nullable
+    Bundle get(String id) {
+        File file = file(id);
+        if (!file.exists()) {
+            return null;
+        }
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            byte[] bytes = read(file);
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(FencePayloadStore.class.getClassLoader());
+        } catch (IOException e) {
+            Log.e("ReactiveAwareness", "Could not read data of fence " + id, e);
+            return null;
+        } catch (RuntimeException e) {
+            // e.g. written by a different version of the application
+            Log.e("ReactiveAwareness", "Could not unmarshall data of fence " + id, e);
+            remove(id);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @param id id of the data
+     * @return {@code true} if data is stored for the given id
+     */
+    boolean contains(String id) {
+        return file(id).exists();
+    }
+
+    void remove(String id) {
+        File file = file(id);
+        if (file.exists() && !file.delete()) {
+            Log.w("ReactiveAwareness", "Could not delete data of fence " + id);
+        }
+    }
+
+    private File file(String id) {
+        // ids are fence names which are not necessarily valid file names
+        return new File(directory, FenceRegistry.hash(id.getBytes(UTF_8)));
+    }
+
+    /**
+     * Writes to a temporary file that replaces the given file once it is complete, so that a
+     * failed or interrupted write never leaves partial data behind.
+     */
+    private void write(File file, byte[] bytes) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        File temporary = new File(file.getPath() + TEMPORARY_SUFFIX);
+        try {
+            FileOutputStream output = new FileOutputStream(temporary);
+            try {
+                output.write(bytes);
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException e) {
+            if (temporary.exists() && !temporary.delete()) {
+                Log.w("ReactiveAwareness", "Could not delete " + temporary);
+            }
+            throw e;
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -23,9 +23,16 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.Log;
 
 import com.google.android.gms.awareness.fence.FenceState;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * BackgroundReceiver that receives fence state updates to BackgroundFences.
  * <p>
@@ -41,12 +48,21 @@ import com.google.android.gms.awareness.fence.FenceState;
  * The Action name for the registered receiver should be "ReactiveAwarenessFence".
  * <p>
  * On each fence state update your implementation of this receiver will retrieve the result in
- * {@link #onUpdate(Context, String, boolean, Bundle)} with the name of the fence and it's state.
+ * {@link #onUpdate(Context, FenceEvent)} with the name of the fence and its state. By default this
+ * calls {@link #onUpdate(Context, String, boolean, Bundle)}, which has to be implemented.
+ * Overriding {@link #onUpdate(Context, FenceEvent)} as well avoids decoding the data attached to
+ * the fence unless it is accessed.
+ * <p>
+ * Instead of handling all fences in one receiver, {@link FenceHandler}s can be registered per fence
+ * name or prefix in {@link FenceHandlers}. Updates of those fences are routed to their handler.
  * <p>
- * The state will be {@code true} if the fence condition is valid.
+ * The state will be {@code true} if the fence condition is valid. Fences registered as a
+ * {@link FenceExpression} are delivered with their name once their evaluated state changes.
  */
 public abstract class FenceReceiver extends BroadcastReceiver {
-    private static final String EXTRA_BUNDLE = "EXTRA_BUNDLE";
+    static final String EXTRA_BUNDLE = "EXTRA_BUNDLE";
+    static final String EXTRA_PAYLOAD_ID = "EXTRA_PAYLOAD_ID";
+    static final String EXTRA_PAYLOAD = "EXTRA_PAYLOAD";
     private static final String ACTION_BACKGROUND_FENCE = "ReactiveAwarenessFence";
 
     /**
@@ -61,6 +77,35 @@ public abstract class FenceReceiver extends BroadcastReceiver {
         return PendingIntent.getBroadcast(context, requestCode, createIntent(data), PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
+    /**
+     * Creates a pending intent that will call this receiver with data kept in the
+     * {@link FencePayloadStore}
+     *
+     * @param context     context to use
+     * @param requestCode request code for the pending intent. Should be unique for the fence
+     * @param payloadId   id of the data in the {@link FencePayloadStore}
+     * @return PendingIntent that will call this receiver
+     */
+    static PendingIntent createPendingIntentForPayload(Context context, int requestCode, String payloadId) {
+        Intent intent = new Intent(ACTION_BACKGROUND_FENCE)
+                .putExtra(EXTRA_PAYLOAD_ID, payloadId);
+        return PendingIntent.getBroadcast(context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Creates a pending intent that will call this receiver with an encoded {@link FencePayload}
+     *
+     * @param context     context to use
+     * @param requestCode request code for the pending intent. Should be unique for the fence
+     * @param payload     encoded payload to be attached to the pending intent
+     * @return PendingIntent that will call this receiver
+     */
+    static PendingIntent createPendingIntentWithPayload(Context context, int requestCode, byte[] payload) {
+        Intent intent = new Intent(ACTION_BACKGROUND_FENCE)
+                .putExtra(EXTRA_PAYLOAD, payload);
+        return PendingIntent.getBroadcast(context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
     /**
      * Creates an Intent that calls this receiver
      *
@@ -79,18 +124,161 @@ public abstract class FenceReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        FenceState state = FenceState.extract(intent);
-
-        Bundle bundle = intent.getBundleExtra(EXTRA_BUNDLE);
+        onReceive(context, intent, FenceState.extract(intent));
+    }
 
+    /**
+     * Handles the state update of a fence that was delivered with the given intent.
+     */
+    void onReceive(Context context, Intent intent, FenceState state) {
         boolean result = state.getCurrentState() == FenceState.TRUE;
         String key = state.getFenceKey();
 
-        onUpdate(context, key, result, bundle);
+        new FenceRegistry(context).onStateChanged(state);
+
+        if (ShardedGeofences.isBoundary(key)) {
+            if (result) {
+                onBoundaryLeft(context);
+            }
+            return;
+        }
+
+        String geofenceName = ShardedGeofences.getGeofenceName(key);
+        if (geofenceName != null) {
+            // without a boundary the geofences are rotated once the device moved in or out of one
+            boolean rotate = ShardedGeofences.isUnbounded(context);
+            deliver(context, Collections.singletonList(new FenceEvent(context, geofenceName, state.getCurrentState(), state.getPreviousState(), state.getLastFenceUpdateTimeMillis(), null)), rotate);
+            return;
+        }
+
+        String leafKey = CompositeFenceStore.getLeafKey(key);
+        if (leafKey != null) {
+            onLeafUpdate(context, leafKey, state);
+            return;
+        }
+
+        deliver(context, Collections.singletonList(new FenceEvent(context, key, state.getCurrentState(), state.getPreviousState(), state.getLastFenceUpdateTimeMillis(), intent)));
+    }
+
+    /**
+     * Delivers the given events to the {@link FenceHandler}s registered in {@link FenceHandlers}.
+     * Handlers are run in parallel on a worker pool while the broadcast is kept alive. Events
+     * without a matching handler are delivered to {@link #onUpdate(Context, FenceEvent)}.
+     */
+    private void deliver(Context context, List<FenceEvent> events) {
+        deliver(context, events, false);
+    }
+
+    /**
+     * Delivers the given events like {@link #deliver(Context, List)} and optionally rotates the
+     * {@link ShardedGeofences} while the broadcast is kept alive.
+     */
+    @SuppressWarnings("MissingPermission")
+    private void deliver(Context context, List<FenceEvent> events, boolean reshard) {
+        PendingResult pendingResult = null;
+        AtomicInteger running = null;
+
+        if (reshard) {
+            pendingResult = goAsync();
+            running = new AtomicInteger(2);
+            PendingResult async = pendingResult;
+            AtomicInteger counter = running;
+            ShardedGeofences.reshard(context)
+                    .subscribe(
+                            () -> {
+                                if (counter.decrementAndGet() == 0) {
+                                    async.finish();
+                                }
+                            },
+                            throwable -> {
+                                Log.e("ReactiveAwareness", "Could not rotate geofences: " + throwable.getLocalizedMessage());
+                                if (counter.decrementAndGet() == 0) {
+                                    async.finish();
+                                }
+                            }
+                    );
+        }
+
+        for (FenceEvent event : events) {
+            FenceHandler handler = FenceHandlers.find(event.getKey());
+            if (handler == null) {
+                onUpdate(context, event);
+                continue;
+            }
+
+            if (pendingResult == null) {
+                pendingResult = goAsync();
+                // one additional count is held until all handlers have been submitted
+                running = new AtomicInteger(1);
+            }
+
+            running.incrementAndGet();
+            PendingResult async = pendingResult;
+            AtomicInteger counter = running;
+            FenceHandlers.getExecutor().execute(() -> {
+                try {
+                    handler.onUpdate(context, event);
+                } catch (RuntimeException e) {
+                    Log.e("ReactiveAwareness", "FenceHandler for " + event.getKey() + " failed: " + e.getLocalizedMessage());
+                } finally {
+                    if (counter.decrementAndGet() == 0) {
+                        async.finish();
+                    }
+                }
+            });
+        }
+
+        if (running != null && running.decrementAndGet() == 0) {
+            pendingResult.finish();
+        }
+    }
+
+    /**
+     * Rotates the registered {@link ShardedGeofences} to the ones nearest to the new location.
+     */
+    @SuppressWarnings("MissingPermission")
+    private void onBoundaryLeft(Context context) {
+        PendingResult pendingResult = goAsync();
+        ShardedGeofences.reshard(context)
+                .subscribe(
+                        pendingResult::finish,
+                        throwable -> {
+                            Log.e("ReactiveAwareness", "Could not rotate geofences: " + throwable.getLocalizedMessage());
+                            pendingResult.finish();
+                        }
+                );
+    }
+
+    /**
+     * Evaluates all {@link FenceExpression}s using the leaf and delivers their changed states.
+     */
+    private void onLeafUpdate(Context context, String leafKey, FenceState state) {
+        Map<String, Boolean> changed = new CompositeFenceStore(context).onLeafUpdate(leafKey, state.getCurrentState());
+        List<FenceEvent> events = new ArrayList<>(changed.size());
+        for (Map.Entry<String, Boolean> entry : changed.entrySet()) {
+            int currentState = entry.getValue() ? FenceState.TRUE : FenceState.FALSE;
+            events.add(new FenceEvent(context, entry.getKey(), currentState, FenceState.UNKNOWN, state.getLastFenceUpdateTimeMillis(), null));
+        }
+        deliver(context, events);
+    }
+
+    /**
+     * Called once the fence changed its state.
+     * <p>
+     * By default the data attached to the fence is decoded and
+     * {@link #onUpdate(Context, String, boolean, Bundle)} is called.
+     *
+     * @param context context to use
+     * @param event   the state update of the fence
+     */
+    protected void onUpdate(@NonNull Context context, @NonNull FenceEvent event) {
+        onUpdate(context, event.getKey(), event.getState(), event.getData());
     }
 
     /**
-     * Called once the fence changed it's state.
+     * Called once the fence changed its state, unless {@link #onUpdate(Context, FenceEvent)} is
+     * overridden. Implementations overriding {@link #onUpdate(Context, FenceEvent)} may leave this
+     * empty.
      *
      * @param context context to use
      * @param key     the key/name of the fence that received an update
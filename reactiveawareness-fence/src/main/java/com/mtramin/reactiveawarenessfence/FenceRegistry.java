@@ -0,0 +1,348 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Parcel;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.awareness.fence.AwarenessFence;
+import com.google.android.gms.awareness.fence.FenceState;
+import com.google.android.gms.awareness.fence.FenceStateMap;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local mirror of the fences registered with the Awareness API and their last known states.
+ * <p>
+ * The mirror is updated whenever this library registers or unregisters fences and whenever the
+ * {@link FenceReceiver} receives a state update, so that queries can be answered without a round
+ * trip to Google Play Services. It is only considered in sync with the Awareness API after it was
+ * refreshed in the current process and as long as no update failed or was received for an unknown
+ * fence. Fences can be removed by the system while the process is not running, e.g. when the
+ * application is force stopped or Google Play Services are updated, so a mirror persisted by an
+ * earlier process is never trusted.
+ */
+class FenceRegistry {
+
+    private static final String PREFERENCES = "ReactiveAwarenessFenceRegistry";
+    private static final String KEY_SYNCED = "synced";
+    private static final String KEY_HASH = "hash:";
+    private static final String KEY_STATE = "state:";
+    private static final String KEY_PREVIOUS_STATE = "previous:";
+    private static final String KEY_UPDATED = "updated:";
+
+    private static final Object lock = new Object();
+
+    /**
+     * Whether the mirror was refreshed from the Awareness API in this process
+     */
+    private static volatile boolean refreshed;
+
+    /**
+     * Keys of the fences confirmed to be registered in this process
+     */
+    private static final Set<String> confirmed = new HashSet<>();
+
+    private final SharedPreferences preferences;
+
+    FenceRegistry(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @param fence fence to hash
+     * @return hash of the serialized definition of the fence
+     */
+    static String hash(AwarenessFence fence) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(fence, 0);
+            return hash(parcel.marshall());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @param definition serialized definition of a fence
+     * @return hash of the definition
+     */
+    static String hash(byte[] definition) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(definition);
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * @return {@code true} if the mirror is believed to match the fences of the Awareness API
+     */
+    boolean isSynced() {
+        return refreshed && preferences.getBoolean(KEY_SYNCED, false);
+    }
+
+    /**
+     * Marks the mirror as out of sync, so that the next query refreshes it.
+     */
+    void invalidate() {
+        preferences.edit()
+                .putBoolean(KEY_SYNCED, false)
+                .apply();
+    }
+
+    /**
+     * @param key key of the fence
+     * @return hash of the definition the fence was registered with, {@code null} if unknown
+     */
+    @Nullable
+    String getHash(String key) {
+        return preferences.getString(KEY_HASH + key, null);
+    }
+
+    /**
+     * @param key key of the fence
+     * @return {@code true} if the fence is registered
+     */
+    boolean contains(String key) {
+        return preferences.contains(KEY_STATE + key);
+    }
+
+    /**
+     * @param key key of the fence
+     * @return {@code true} if the fence was registered, queried or refreshed from the Awareness
+     * API in this process and is still registered
+     */
+    boolean isConfirmed(String key) {
+        synchronized (lock) {
+            return contains(key) && (isSynced() || confirmed.contains(key));
+        }
+    }
+
+    void onRegistered(String key, @Nullable String hash) {
+        synchronized (lock) {
+            SharedPreferences.Editor editor = preferences.edit()
+                    .putInt(KEY_STATE + key, FenceState.UNKNOWN)
+                    .putInt(KEY_PREVIOUS_STATE + key, FenceState.UNKNOWN)
+                    .putLong(KEY_UPDATED + key, System.currentTimeMillis());
+            if (hash == null) {
+                editor.remove(KEY_HASH + key);
+            } else {
+                editor.putString(KEY_HASH + key, hash);
+            }
+            editor.apply();
+            confirmed.add(key);
+        }
+    }
+
+    void onUnregistered(Collection<String> keys) {
+        synchronized (lock) {
+            SharedPreferences.Editor editor = preferences.edit();
+            for (String key : keys) {
+                remove(editor, key);
+            }
+            editor.apply();
+            confirmed.removeAll(keys);
+        }
+    }
+
+    void onStateChanged(FenceState state) {
+        synchronized (lock) {
+            String key = state.getFenceKey();
+            SharedPreferences.Editor editor = preferences.edit();
+            if (!contains(key)) {
+                // registered outside of this library or while the mirror was not updated
+                editor.putBoolean(KEY_SYNCED, false);
+            }
+            putState(editor, state);
+            editor.apply();
+        }
+    }
+
+    /**
+     * Replaces the content of the mirror with the fences reported by the Awareness API
+     *
+     * @param stateMap currently registered fences
+     */
+    void refresh(FenceStateMap stateMap) {
+        synchronized (lock) {
+            SharedPreferences.Editor editor = preferences.edit();
+
+            Set<String> keys = stateMap.getFenceKeys();
+            for (String key : getKeys()) {
+                if (!keys.contains(key)) {
+                    remove(editor, key);
+                }
+            }
+            for (String key : keys) {
+                putState(editor, stateMap.getFenceState(key));
+            }
+
+            editor.putBoolean(KEY_SYNCED, true)
+                    .apply();
+            refreshed = true;
+        }
+    }
+
+    /**
+     * Updates the given fences with the states reported by the Awareness API. Fences that were not
+     * reported are not registered anymore.
+     *
+     * @param keys     keys of the queried fences
+     * @param stateMap states of the queried fences
+     */
+    void update(Collection<String> keys, FenceStateMap stateMap) {
+        synchronized (lock) {
+            SharedPreferences.Editor editor = preferences.edit();
+
+            Set<String> reported = stateMap.getFenceKeys();
+            for (String key : keys) {
+                if (reported.contains(key)) {
+                    putState(editor, stateMap.getFenceState(key));
+                    confirmed.add(key);
+                } else {
+                    remove(editor, key);
+                    confirmed.remove(key);
+                }
+            }
+            editor.apply();
+        }
+    }
+
+    /**
+     * @return the fences of the mirror and their last known states
+     */
+    FenceStateMap getStateMap() {
+        synchronized (lock) {
+            return getStateMap(getKeys());
+        }
+    }
+
+    /**
+     * @param keys keys of the fences to return
+     * @return the given fences of the mirror that are registered and their last known states
+     */
+    FenceStateMap getStateMap(Collection<String> keys) {
+        synchronized (lock) {
+            Map<String, FenceState> states = new HashMap<>();
+            for (String key : keys) {
+                if (!contains(key)) {
+                    continue;
+                }
+                states.put(key, new MirroredFenceState(
+                        key,
+                        preferences.getInt(KEY_STATE + key, FenceState.UNKNOWN),
+                        preferences.getInt(KEY_PREVIOUS_STATE + key, FenceState.UNKNOWN),
+                        preferences.getLong(KEY_UPDATED + key, 0)
+                ));
+            }
+            return new MirroredFenceStateMap(states);
+        }
+    }
+
+    private Set<String> getKeys() {
+        Set<String> keys = new HashSet<>();
+        for (String key : preferences.getAll().keySet()) {
+            if (key.startsWith(KEY_STATE)) {
+                keys.add(key.substring(KEY_STATE.length()));
+            }
+        }
+        return keys;
+    }
+
+    private static void putState(SharedPreferences.Editor editor, FenceState state) {
+        String key = state.getFenceKey();
+        editor.putInt(KEY_STATE + key, state.getCurrentState())
+                .putInt(KEY_PREVIOUS_STATE + key, state.getPreviousState())
+                .putLong(KEY_UPDATED + key, state.getLastFenceUpdateTimeMillis());
+    }
+
+    private static void remove(SharedPreferences.Editor editor, String key) {
+        editor.remove(KEY_HASH + key)
+                .remove(KEY_STATE + key)
+                .remove(KEY_PREVIOUS_STATE + key)
+                .remove(KEY_UPDATED + key);
+    }
+
+    private static class MirroredFenceStateMap extends FenceStateMap {
+
+        private final Map<String, FenceState> states;
+
+        private MirroredFenceStateMap(Map<String, FenceState> states) {
+            this.states = states;
+        }
+
+        @Override
+        public Set<String> getFenceKeys() {
+            return states.keySet();
+        }
+
+        @Override
+        public FenceState getFenceState(String fenceKey) {
+            return states.get(fenceKey);
+        }
+    }
+
+    private static class MirroredFenceState extends FenceState {
+
+        private final String key;
+        private final int currentState;
+        private final int previousState;
+        private final long lastUpdateTimeMillis;
+
+        private MirroredFenceState(String key, int currentState, int previousState, long lastUpdateTimeMillis) {
+            this.key = key;
+            this.currentState = currentState;
+            this.previousState = previousState;
+            this.lastUpdateTimeMillis = lastUpdateTimeMillis;
+        }
+
+        @Override
+        public int getCurrentState() {
+            return currentState;
+        }
+
+        @Override
+        public int getPreviousState() {
+            return previousState;
+        }
+
+        @Override
+        public String getFenceKey() {
+            return key;
+        }
+
+        @Override
+        public long getLastFenceUpdateTimeMillis() {
+            return lastUpdateTimeMillis;
+        }
+    }
+}
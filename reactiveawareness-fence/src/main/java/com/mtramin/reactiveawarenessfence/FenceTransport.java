@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import com.mtramin.reactiveawareness2.AwarenessTransport;
+import com.mtramin.reactiveawareness2.PlayServicesTransport;
+
+/**
+ * Holds the {@link AwarenessTransport} used for all fence operations.
+ */
+class FenceTransport {
+
+    private static volatile AwarenessTransport transport = new PlayServicesTransport();
+
+    static AwarenessTransport get() {
+        return transport;
+    }
+
+    static void set(AwarenessTransport transport) {
+        FenceTransport.transport = transport;
+    }
+}
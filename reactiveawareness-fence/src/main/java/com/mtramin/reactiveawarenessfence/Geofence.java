@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+/**
+ * A circular region managed by {@link ShardedGeofences}.
+ */
+public final class Geofence {
+
+    private final String name;
+    private final double latitude;
+    private final double longitude;
+    private final double radiusMeters;
+
+    /**
+     * @param name         unique name of the geofence. State changes of the geofence are delivered
+     *                     to the {@link FenceReceiver} with this name
+     * @param latitude     latitude of the center of the region
+     * @param longitude    longitude of the center of the region
+     * @param radiusMeters radius of the region in meters
+     */
+    public Geofence(String name, double latitude, double longitude, double radiusMeters) {
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getRadiusMeters() {
+        return radiusMeters;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grid based spatial index of {@link Geofence}s to find the geofences nearest to a location.
+ * <p>
+ * Geofences are bucketed into cells of a fixed size in degrees. A query searches the cells in
+ * rings of growing size around the location and stops once no geofence in an unvisited cell can
+ * be closer than the ones already found.
+ */
+class GeofenceIndex {
+
+    private static final double CELL_DEGREES = 0.05;
+    private static final double METERS_PER_DEGREE = 111_320;
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private final Map<Long, List<Geofence>> cells = new HashMap<>();
+    private final int size;
+
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+    private int minColumn = Integer.MAX_VALUE;
+    private int maxColumn = Integer.MIN_VALUE;
+    private double maxRadiusMeters;
+    private double maxAbsoluteLatitude;
+
+    GeofenceIndex(Collection<Geofence> geofences) {
+        this.size = geofences.size();
+
+        for (Geofence geofence : geofences) {
+            int row = row(geofence.getLatitude());
+            int column = column(geofence.getLongitude());
+
+            long cell = cell(row, column);
+            List<Geofence> cellGeofences = cells.get(cell);
+            if (cellGeofences == null) {
+                cellGeofences = new ArrayList<>();
+                cells.put(cell, cellGeofences);
+            }
+            cellGeofences.add(geofence);
+
+            minRow = Math.min(minRow, row);
+            maxRow = Math.max(maxRow, row);
+            minColumn = Math.min(minColumn, column);
+            maxColumn = Math.max(maxColumn, column);
+            maxRadiusMeters = Math.max(maxRadiusMeters, geofence.getRadiusMeters());
+            maxAbsoluteLatitude = Math.max(maxAbsoluteLatitude, Math.abs(geofence.getLatitude()));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the geofences whose borders are nearest to the given location.
+     *
+     * @param latitude  latitude of the location
+     * @param longitude longitude of the location
+     * @param count     maximum number of geofences to find
+     * @return the nearest geofences ordered by the distance of their borders to the location
+     */
+    List<Nearby> nearest(double latitude, double longitude, int count) {
+        List<Nearby> candidates = new ArrayList<>();
+        if (size == 0 || count <= 0) {
+            return candidates;
+        }
+
+        int row = row(latitude);
+        int column = column(longitude);
+        int maxRing = Math.max(
+                Math.max(Math.abs(row - minRow), Math.abs(row - maxRow)),
+                Math.max(Math.abs(column - minColumn), Math.abs(column - maxColumn))
+        );
+
+        // cells are narrowest at the highest latitude, which gives a lower bound for all cells
+        double latitudeForBound = Math.min(89, Math.max(maxAbsoluteLatitude, Math.abs(latitude)));
+        double minCellMeters = CELL_DEGREES * METERS_PER_DEGREE * Math.cos(Math.toRadians(latitudeForBound));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            collectRing(row, column, ring, latitude, longitude, candidates);
+
+            if (candidates.size() >= count) {
+                Collections.sort(candidates);
+                double unvisitedBound = ring * minCellMeters - maxRadiusMeters;
+                if (candidates.get(count - 1).borderDistanceMeters <= unvisitedBound) {
+                    break;
+                }
+            }
+        }
+
+        Collections.sort(candidates);
+        return candidates.size() > count ? new ArrayList<>(candidates.subList(0, count)) : candidates;
+    }
+
+    private void collectRing(int row, int column, int ring, double latitude, double longitude, List<Nearby> candidates) {
+        for (int r = row - ring; r <= row + ring; r++) {
+            boolean edgeRow = r == row - ring || r == row + ring;
+            int step = edgeRow || ring == 0 ? 1 : 2 * ring;
+            for (int c = column - ring; c <= column + ring; c += step) {
+                List<Geofence> cellGeofences = cells.get(cell(r, c));
+                if (cellGeofences == null) {
+                    continue;
+                }
+                for (Geofence geofence : cellGeofences) {
+                    double distance = distanceMeters(latitude, longitude, geofence.getLatitude(), geofence.getLongitude());
+                    candidates.add(new Nearby(geofence, distance - geofence.getRadiusMeters()));
+                }
+            }
+        }
+    }
+
+    private static int row(double latitude) {
+        return (int) Math.floor(latitude / CELL_DEGREES);
+    }
+
+    private static int column(double longitude) {
+        return (int) Math.floor(longitude / CELL_DEGREES);
+    }
+
+    private static long cell(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    /**
+     * @return great-circle distance between the given coordinates in meters
+     */
+    static double distanceMeters(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double deltaLatitude = Math.toRadians(latitude2 - latitude1);
+        double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(deltaLatitude / 2) * Math.sin(deltaLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(deltaLongitude / 2) * Math.sin(deltaLongitude / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * A geofence together with the distance of its border to the queried location. The distance is
+     * negative if the location is inside the geofence.
+     */
+    static class Nearby implements Comparable<Nearby> {
+        final Geofence geofence;
+        final double borderDistanceMeters;
+
+        private Nearby(Geofence geofence, double borderDistanceMeters) {
+            this.geofence = geofence;
+            this.borderDistanceMeters = borderDistanceMeters;
+        }
+
+        @Override
+        public int compareTo(Nearby other) {
+            return Double.compare(borderDistanceMeters, other.borderDistanceMeters);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persists the catalog of {@link ShardedGeofences} and the names of the currently registered
+ * geofences.
+ * <p>
+ * The catalog is written to a file as it can contain thousands of geofences. The
+ * {@link GeofenceIndex} built from it is kept in memory until the catalog changes.
+ */
+class GeofenceShardStore {
+
+    private static final String CATALOG_FILE = "reactiveawareness_geofences";
+    private static final String PREFERENCES = "ReactiveAwarenessGeofenceShards";
+    private static final String KEY_ACTIVE = "active";
+    private static final String KEY_MAX_ACTIVE = "maxActive";
+    private static final String KEY_BOUNDARY = "boundary";
+    private static final String KEY_STALE = "stale";
+    private static final String KEY_UNBOUNDED = "unbounded";
+
+    private static final Object lock = new Object();
+    private static GeofenceIndex index;
+
+    private final File catalogFile;
+    private final SharedPreferences preferences;
+
+    GeofenceShardStore(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        this.catalogFile = new File(applicationContext.getFilesDir(), CATALOG_FILE);
+        this.preferences = applicationContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    void setCatalog(Collection<Geofence> geofences, int maxActiveFences) throws IOException {
+        synchronized (lock) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(catalogFile)));
+            try {
+                output.writeInt(geofences.size());
+                for (Geofence geofence : geofences) {
+                    output.writeUTF(geofence.getName());
+                    output.writeDouble(geofence.getLatitude());
+                    output.writeDouble(geofence.getLongitude());
+                    output.writeDouble(geofence.getRadiusMeters());
+                }
+            } finally {
+                output.close();
+            }
+
+            preferences.edit()
+                    .putInt(KEY_MAX_ACTIVE, maxActiveFences)
+                    .putBoolean(KEY_STALE, true)
+                    .apply();
+            index = new GeofenceIndex(geofences);
+        }
+    }
+
+    /**
+     * @return index of the catalog, empty if no catalog has been set
+     */
+    GeofenceIndex getIndex() {
+        synchronized (lock) {
+            if (index == null) {
+                index = new GeofenceIndex(readCatalog());
+            }
+            return index;
+        }
+    }
+
+    int getMaxActiveFences() {
+        return preferences.getInt(KEY_MAX_ACTIVE, 0);
+    }
+
+    Set<String> getActive() {
+        return new HashSet<>(preferences.getStringSet(KEY_ACTIVE, Collections.<String>emptySet()));
+    }
+
+    /**
+     * @return {@code true} if the catalog changed since the active geofences were registered, so
+     * they have to be registered again
+     */
+    boolean isStale() {
+        return preferences.getBoolean(KEY_STALE, false);
+    }
+
+    boolean hasBoundary() {
+        return preferences.getBoolean(KEY_BOUNDARY, false);
+    }
+
+    /**
+     * @return {@code true} if more geofences are near than could be registered and no boundary
+     * could be registered
+     */
+    boolean isUnbounded() {
+        return preferences.getBoolean(KEY_UNBOUNDED, false);
+    }
+
+    void setActive(Set<String> names, boolean boundary, boolean unbounded) {
+        preferences.edit()
+                .putStringSet(KEY_ACTIVE, names)
+                .putBoolean(KEY_BOUNDARY, boundary)
+                .putBoolean(KEY_UNBOUNDED, unbounded)
+                .putBoolean(KEY_STALE, false)
+                .apply();
+    }
+
+    void clear() {
+        synchronized (lock) {
+            if (catalogFile.exists() && !catalogFile.delete()) {
+                Log.w("ReactiveAwareness", "Could not delete geofence catalog");
+            }
+            preferences.edit().clear().apply();
+            index = null;
+        }
+    }
+
+    private List<Geofence> readCatalog() {
+        if (!catalogFile.exists()) {
+            return Collections.emptyList();
+        }
+
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(catalogFile)));
+            try {
+                int size = input.readInt();
+                List<Geofence> geofences = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    geofences.add(new Geofence(input.readUTF(), input.readDouble(), input.readDouble(), input.readDouble()));
+                }
+                return geofences;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            Log.e("ReactiveAwareness", "Could not read geofence catalog", e);
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import com.google.android.gms.awareness.fence.AwarenessFence;
+import com.google.android.gms.awareness.fence.TimeFence;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+
+/**
+ * A time interval fence that is evaluated on the device instead of by the Awareness API.
+ * <p>
+ * Observing it via {@link ObservableFence#create(LocalTimeFence)} does not connect to Google Play
+ * Services, register a PendingIntent or a receiver. All observed time fences share a single timer,
+ * which makes them cheap even for large numbers of short time windows. Use
+ * {@link #toAwarenessFence()} to register the same interval with the Awareness API, e.g. as a
+ * {@link BackgroundFence}.
+ */
+public final class LocalTimeFence {
+
+    private final long startTimeMillis;
+    private final long stopTimeMillis;
+
+    private LocalTimeFence(long startTimeMillis, long stopTimeMillis) {
+        this.startTimeMillis = startTimeMillis;
+        this.stopTimeMillis = stopTimeMillis;
+    }
+
+    /**
+     * Creates a fence that is {@code true} between the given points in time, like
+     * {@link TimeFence#inInterval(long, long)}.
+     *
+     * @param startTimeMillis start of the interval in milliseconds since the epoch
+     * @param stopTimeMillis  end of the interval in milliseconds since the epoch
+     * @return the time fence
+     */
+    public static LocalTimeFence inInterval(long startTimeMillis, long stopTimeMillis) {
+        if (startTimeMillis > stopTimeMillis) {
+            throw new IllegalArgumentException("Start time must not be after stop time");
+        }
+        return new LocalTimeFence(startTimeMillis, stopTimeMillis);
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getStopTimeMillis() {
+        return stopTimeMillis;
+    }
+
+    /**
+     * @return an {@link AwarenessFence} of the same interval
+     */
+    public AwarenessFence toAwarenessFence() {
+        return TimeFence.inInterval(startTimeMillis, stopTimeMillis);
+    }
+
+    /**
+     * @param timeMillis time in milliseconds since the epoch
+     * @return {@code true} if the fence is true at the given time
+     */
+    boolean isTrue(long timeMillis) {
+        return timeMillis >= startTimeMillis && timeMillis < stopTimeMillis;
+    }
+
+    /**
+     * Emits the current state of the fence and afterwards each change of it.
+     *
+     * @return Observable of the fence state
+     */
+    Observable<Boolean> observe() {
+        return Observable.<Boolean>create(emitter -> {
+            TimeFenceEngine engine = TimeFenceEngine.get();
+            CompositeDisposable timers = new CompositeDisposable();
+            emitter.setDisposable(timers);
+
+            long now = System.currentTimeMillis();
+            emitter.onNext(isTrue(now));
+
+            if (now < startTimeMillis && startTimeMillis < stopTimeMillis) {
+                timers.add(engine.schedule(startTimeMillis, () -> emitter.onNext(true)));
+            }
+            if (now < stopTimeMillis) {
+                timers.add(engine.schedule(stopTimeMillis, () -> emitter.onNext(false)));
+            }
+        }).distinctUntilChanged();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LocalTimeFence)) {
+            return false;
+        }
+        LocalTimeFence that = (LocalTimeFence) o;
+        return startTimeMillis == that.startTimeMillis && stopTimeMillis == that.stopTimeMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (startTimeMillis ^ (startTimeMillis >>> 32)) + (int) (stopTimeMillis ^ (stopTimeMillis >>> 32));
+    }
+}
@@ -22,17 +22,18 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.fence.AwarenessFence;
 import com.google.android.gms.awareness.fence.FenceState;
 import com.google.android.gms.awareness.fence.FenceUpdateRequest;
-import com.google.android.gms.common.api.GoogleApiClient;
+import com.mtramin.reactiveawareness2.AwarenessCallbackLooper;
+import com.mtramin.reactiveawareness2.AwarenessConnection;
+import com.mtramin.reactiveawareness2.RequestRecorder;
 import com.mtramin.servant2.ClientException;
-import com.mtramin.servant2.Servant;
 
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.Single;
 
 /**
  * A Fence whose state can be observed.
@@ -42,6 +43,8 @@ import io.reactivex.ObservableOnSubscribe;
  *
  * When you unsubscribe from the resulting {@link io.reactivex.disposables.Disposable} will also automatically
  * unregister the fence.
+ *
+ * State updates are emitted on the {@link AwarenessCallbackLooper}.
  */
 public class ObservableFence implements ObservableOnSubscribe<Boolean> {
 
@@ -49,12 +52,13 @@ public class ObservableFence implements ObservableOnSubscribe<Boolean> {
     private static final String OBSERVABLE_FENCE = "ObservableFence";
 
     private final Context context;
-    private final GoogleApiClient googleApiClient;
+    private final AwarenessConnection connection;
     private final AwarenessFence fence;
+    private final RequestRecorder metrics = RequestRecorder.get(FenceMetrics.OBSERVABLE);
 
-    private ObservableFence(Context context, GoogleApiClient client, AwarenessFence fence) {
+    private ObservableFence(Context context, AwarenessConnection connection, AwarenessFence fence) {
         this.context = context;
-        this.googleApiClient = client;
+        this.connection = connection;
         this.fence = fence;
     }
 
@@ -69,60 +73,107 @@ public class ObservableFence implements ObservableOnSubscribe<Boolean> {
      * condition is valid
      */
     public static Observable<Boolean> create(Context context, AwarenessFence fence) {
-        return Servant.observable(context.getApplicationContext(), Awareness.API)
-                .flatMap(client -> Observable.create(new ObservableFence(context, client, fence)));
+        return Single.defer(() -> connect(context.getApplicationContext()))
+                .flatMapObservable(connection -> Observable.create(new ObservableFence(context, connection, fence)));
+    }
+
+    /**
+     * Creates an observable time fence that is evaluated locally. The current state of the fence is
+     * emitted right away, afterwards every change of its state is emitted. No connection to the
+     * Awareness API is made.
+     *
+     * @param fence the time fence to observe
+     * @return Observable state updates to the fences state where {@code true} means that the
+     * current time is within the interval of the fence
+     */
+    public static Observable<Boolean> create(LocalTimeFence fence) {
+        return fence.observe();
+    }
+
+    private static Single<AwarenessConnection> connect(Context context) {
+        RequestRecorder metrics = RequestRecorder.get(FenceMetrics.OBSERVABLE);
+        long connectStart = System.nanoTime();
+
+        return FenceTransport.get().connect(context)
+                .doOnSuccess(connection -> metrics.recordConnect(System.nanoTime() - connectStart))
+                .doOnError(throwable -> metrics.recordError());
     }
 
     @Override
     public void subscribe(ObservableEmitter<Boolean> emitter) throws Exception {
-        BroadcastReceiver receiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                FenceState state = FenceState.extract(intent);
-                boolean result = state.getCurrentState() == FenceState.TRUE;
-                emitter.onNext(result);
-            }
-        };
-
-        context.registerReceiver(receiver, new IntentFilter(RECEIVER_ACTION));
+        BroadcastReceiver receiver = new StateReceiver(emitter);
+
+        context.registerReceiver(receiver, new IntentFilter(RECEIVER_ACTION), null, AwarenessCallbackLooper.getHandler());
         PendingIntent pendingIntent = PendingIntent.getBroadcast(context, fence.hashCode(), new Intent(RECEIVER_ACTION), 0);
 
         FenceUpdateRequest fenceUpdateRequest = new FenceUpdateRequest.Builder()
                 .addFence(OBSERVABLE_FENCE, fence, pendingIntent)
                 .build();
 
-        Awareness.FenceApi.updateFences(googleApiClient, fenceUpdateRequest)
-                .setResultCallback(status -> {
-                    if (!status.isSuccess()) {
-                        emitter.onError(new ClientException("Error adding observable fence. " + status.getStatusMessage()));
-                    }
-                    emitter.onComplete();
-                });
+        long requestStart = System.nanoTime();
+        connection.updateFences(fenceUpdateRequest)
+                .subscribe(
+                        status -> {
+                            metrics.recordRequest(System.nanoTime() - requestStart);
+                            metrics.recordStatus(status.getStatusCode());
+
+                            if (!status.isSuccess()) {
+                                emitter.onError(new ClientException("Error adding observable fence. " + status.getStatusMessage()));
+                            }
+                        },
+                        throwable -> {
+                            metrics.recordError();
+                            emitter.onError(throwable);
+                        }
+                );
 
         emitter.setCancellable(() -> {
             context.unregisterReceiver(receiver);
-            unregisterFenceRequest(googleApiClient, emitter);
+            unregisterFenceRequest(emitter);
         });
     }
 
 
-    private void unregisterFenceRequest(GoogleApiClient googleApiClient, ObservableEmitter<Boolean> emitter) {
+    private void unregisterFenceRequest(ObservableEmitter<Boolean> emitter) {
         FenceUpdateRequest fenceUpdateRequest = new FenceUpdateRequest.Builder()
                 .removeFence(OBSERVABLE_FENCE)
                 .build();
 
-        Awareness.FenceApi.updateFences(googleApiClient, fenceUpdateRequest)
-                .setResultCallback(status -> {
-                    if (!status.isSuccess()) {
-                        emitter.onError(new ClientException("Error removing observable fence. " + status.getStatusMessage()));
-                    }
-
-                    if (googleApiClient.isConnecting() || googleApiClient.isConnected()) {
-                        googleApiClient.disconnect();
-                    }
-                    emitter.onComplete();
-                });
+        connection.updateFences(fenceUpdateRequest)
+                .subscribe(
+                        status -> {
+                            if (!status.isSuccess()) {
+                                emitter.onError(new ClientException("Error removing observable fence. " + status.getStatusMessage()));
+                            }
+
+                            connection.disconnect();
+                            emitter.onComplete();
+                        },
+                        throwable -> {
+                            connection.disconnect();
+                            emitter.onError(throwable);
+                        }
+                );
     }
 
+    /**
+     * Emits the states of the fence that are broadcast to it.
+     */
+    static class StateReceiver extends BroadcastReceiver {
+
+        private final ObservableEmitter<Boolean> emitter;
+
+        StateReceiver(ObservableEmitter<Boolean> emitter) {
+            this.emitter = emitter;
+        }
 
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onStateChanged(FenceState.extract(intent));
+        }
+
+        void onStateChanged(FenceState state) {
+            emitter.onNext(state.getCurrentState() == FenceState.TRUE);
+        }
+    }
 }
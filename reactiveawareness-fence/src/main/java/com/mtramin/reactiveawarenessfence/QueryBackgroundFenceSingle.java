@@ -18,43 +18,186 @@ package com.mtramin.reactiveawarenessfence;
 
 import android.content.Context;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.fence.FenceQueryRequest;
 import com.google.android.gms.awareness.fence.FenceQueryResult;
+import com.google.android.gms.awareness.fence.FenceState;
 import com.google.android.gms.awareness.fence.FenceStateMap;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
-import com.mtramin.servant2.GoogleApiClientRequestSingle;
+import com.google.android.gms.common.api.Status;
+import com.mtramin.reactiveawareness2.AwarenessConnection;
+import com.mtramin.reactiveawareness2.AwarenessTransport;
+import com.mtramin.reactiveawareness2.RequestRecorder;
+import com.mtramin.servant2.ClientException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+import io.reactivex.disposables.Disposable;
 
 /**
  * Single that will query the currently registered fences and their states.
  *
- * The result will be delivered through a {@link Single}
+ * The result will be delivered through a {@link Single}. Fences registered internally by this
+ * library, e.g. the leaves of {@link FenceExpression}s, are not contained in the result.
  */
-class QueryBackgroundFenceSingle extends GoogleApiClientRequestSingle<FenceStateMap, FenceQueryResult> {
+class QueryBackgroundFenceSingle implements SingleOnSubscribe<FenceStateMap> {
+
+    /**
+     * Prefix of the fences registered by ReactiveSnapshots to cache values until they change
+     */
+    private static final String SNAPSHOT_FENCE_PREFIX = "ReactiveAwarenessSnapshot_";
+
+    private final Context context;
+    private final AwarenessTransport transport;
+    private final FenceQueryRequest request;
+    private final RequestRecorder metrics = RequestRecorder.get(FenceMetrics.QUERY);
 
-    private QueryBackgroundFenceSingle(Context context) {
-        super(context, Awareness.API);
+    private QueryBackgroundFenceSingle(Context context, AwarenessTransport transport, FenceQueryRequest request) {
+        this.context = context;
+        this.transport = transport;
+        this.request = request;
     }
 
     /**
-     * Creates the query Single.
+     * Creates the query Single. The result is served from the local {@link FenceRegistry} if it is
+     * in sync with the Awareness API.
      * @param context context to use
      * @return Single map of all registered fence states.
      */
     static Single<FenceStateMap> query(Context context) {
-        return Single.create(new QueryBackgroundFenceSingle(context.getApplicationContext()));
+        FenceRegistry registry = new FenceRegistry(context);
+        return Single.defer(() -> registry.isSynced() ? Single.just(withoutInternalFences(registry.getStateMap())) : refresh(context));
     }
 
-    @Override
-    protected FenceStateMap unwrap(FenceQueryResult result) {
-        return result.getFenceStateMap();
+    /**
+     * Creates the query Single that always queries the Awareness API and refreshes the local
+     * {@link FenceRegistry} with the result.
+     * @param context context to use
+     * @return Single map of all registered fence states.
+     */
+    static Single<FenceStateMap> refresh(Context context) {
+        FenceRegistry registry = new FenceRegistry(context);
+        return Single.create(new QueryBackgroundFenceSingle(context.getApplicationContext(), FenceTransport.get(), FenceQueryRequest.all()))
+                .doOnSuccess(registry::refresh)
+                .map(QueryBackgroundFenceSingle::withoutInternalFences);
+    }
+
+    /**
+     * Creates the query Single for the fences with the given keys. The result is served from the
+     * local {@link FenceRegistry} if it is in sync with the Awareness API, otherwise only the given
+     * fences are queried.
+     * @param context context to use
+     * @param keys    keys of the fences to query
+     * @return Single map of the states of the given fences that are registered.
+     */
+    static Single<FenceStateMap> query(Context context, Collection<String> keys) {
+        FenceRegistry registry = new FenceRegistry(context);
+        List<String> fenceKeys = new ArrayList<>(keys);
+
+        return Single.defer(() -> {
+            if (registry.isSynced()) {
+                return Single.just(withoutInternalFences(registry.getStateMap(fenceKeys)));
+            }
+            return refresh(context, fenceKeys);
+        });
+    }
+
+    /**
+     * Creates the query Single for the fences with the given keys that always queries the
+     * Awareness API and updates the local {@link FenceRegistry} with the result.
+     * @param context context to use
+     * @param keys    keys of the fences to query
+     * @return Single map of the states of the given fences that are registered.
+     */
+    static Single<FenceStateMap> refresh(Context context, Collection<String> keys) {
+        FenceRegistry registry = new FenceRegistry(context);
+        List<String> fenceKeys = new ArrayList<>(keys);
+
+        return Single.create(new QueryBackgroundFenceSingle(context.getApplicationContext(), FenceTransport.get(), FenceQueryRequest.forFences(fenceKeys)))
+                .doOnSuccess(stateMap -> registry.update(fenceKeys, stateMap))
+                .map(QueryBackgroundFenceSingle::withoutInternalFences);
+    }
+
+    /**
+     * @param fenceKey key of a fence registered with the Awareness API
+     * @return {@code true} if the fence was registered internally by this library
+     */
+    static boolean isInternal(String fenceKey) {
+        return CompositeFenceStore.getLeafKey(fenceKey) != null
+                || ShardedGeofences.getGeofenceName(fenceKey) != null
+                || ShardedGeofences.isBoundary(fenceKey)
+                || fenceKey.startsWith(SNAPSHOT_FENCE_PREFIX);
+    }
+
+    private static FenceStateMap withoutInternalFences(FenceStateMap stateMap) {
+        Map<String, FenceState> states = new HashMap<>();
+        for (String key : stateMap.getFenceKeys()) {
+            if (!isInternal(key)) {
+                states.put(key, stateMap.getFenceState(key));
+            }
+        }
+        return new FilteredFenceStateMap(states);
     }
 
     @Override
-    protected PendingResult<? super FenceQueryResult> createRequest(GoogleApiClient googleApiClient) {
-        return Awareness.FenceApi.queryFences(googleApiClient, FenceQueryRequest.all());
+    public void subscribe(SingleEmitter<FenceStateMap> emitter) throws Exception {
+        long connectStart = System.nanoTime();
+
+        Disposable disposable = transport.connect(context)
+                .doOnSuccess(connection -> metrics.recordConnect(System.nanoTime() - connectStart))
+                .doOnError(throwable -> metrics.recordError())
+                .flatMap(this::createRequest)
+                .subscribe(
+                        result -> onResult(emitter, result),
+                        emitter::onError
+                );
+
+        emitter.setDisposable(disposable);
+    }
+
+    private Single<FenceQueryResult> createRequest(AwarenessConnection connection) {
+        long requestStart = System.nanoTime();
+        return connection.queryFences(request)
+                .doOnSuccess(result -> metrics.recordRequest(System.nanoTime() - requestStart))
+                .doOnError(throwable -> metrics.recordError())
+                .doOnEvent((result, throwable) -> connection.disconnect())
+                .doOnDispose(connection::disconnect);
+    }
+
+    private void onResult(SingleEmitter<FenceStateMap> emitter, FenceQueryResult result) {
+        Status status = result.getStatus();
+        metrics.recordStatus(status.getStatusCode());
+
+        if (!status.isSuccess()) {
+            emitter.onError(new ClientException("Querying fences failed. " + status.getStatusMessage()));
+            return;
+        }
+
+        emitter.onSuccess(result.getFenceStateMap());
+    }
+
+    private static class FilteredFenceStateMap extends FenceStateMap {
+
+        private final Map<String, FenceState> states;
+
+        private FilteredFenceStateMap(Map<String, FenceState> states) {
+            this.states = states;
+        }
+
+        @Override
+        public Set<String> getFenceKeys() {
+            return states.keySet();
+        }
+
+        @Override
+        public FenceState getFenceState(String fenceKey) {
+            return states.get(fenceKey);
+        }
     }
 }
@@ -16,38 +16,71 @@
 
 package com.mtramin.reactiveawarenessfence;
 
+import android.app.PendingIntent;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Parcel;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.fence.AwarenessFence;
 import com.google.android.gms.awareness.fence.FenceUpdateRequest;
-import com.google.android.gms.common.api.GoogleApiClient;
+import com.mtramin.reactiveawareness2.AwarenessConnection;
+import com.mtramin.reactiveawareness2.RequestRecorder;
 import com.mtramin.servant2.ClientException;
-import com.mtramin.servant2.Servant;
+
+import java.util.Collections;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
 
 /**
- * Registers a background fence
+ * Registers a background fence. Registering a fence that is already registered with the same
+ * definition and data is skipped.
  */
-class RegisterBackgroundFenceAction {
+class RegisterBackgroundFenceAction implements CompletableOnSubscribe {
+
+    private static final String KIND_DATA = "data";
+    private static final String KIND_STORED_DATA = "stored";
+    private static final String KIND_PAYLOAD = "payload";
+
+    private final RequestRecorder metrics = RequestRecorder.get(FenceMetrics.REGISTER);
 
     private final Context context;
-    private final Bundle data;
+    private final PendingIntent pendingIntent;
+    private final String hash;
     private String name;
     private AwarenessFence fence;
 
+    private CompletableEmitter emitter;
+    private long connectStart;
+
     private RegisterBackgroundFenceAction(Context context,
                                           String name,
                                           AwarenessFence fence,
-                                          @Nullable Bundle data) {
+                                          PendingIntent pendingIntent,
+                                          String hash) {
         this.context = context;
         this.name = name;
         this.fence = fence;
-        this.data = data;
+        this.pendingIntent = pendingIntent;
+        this.hash = hash;
+    }
+
+    @Override
+    public void subscribe(CompletableEmitter emitter) throws Exception {
+        this.emitter = emitter;
+        this.connectStart = System.nanoTime();
 
-        Servant.actions(context, Awareness.API, this::onClientConnected, this::onClientError);
+        FenceTransport.get().connect(context)
+                .subscribe(
+                        this::onClientConnected,
+                        throwable -> {
+                            metrics.recordError();
+                            onClientError(throwable);
+                        }
+                );
     }
 
     /**
@@ -56,9 +89,10 @@ class RegisterBackgroundFenceAction {
      * @param context context to use
      * @param name    name of the fence
      * @param fence   fence to register
+     * @return Completable of the registration
      */
-    static void register(Context context, String name, AwarenessFence fence) {
-        new RegisterBackgroundFenceAction(context.getApplicationContext(), name, fence, null);
+    static Completable register(Context context, String name, AwarenessFence fence) {
+        return registerWithData(context, name, fence, null);
     }
 
     /**
@@ -70,29 +104,141 @@ class RegisterBackgroundFenceAction {
      * @param name    name of the fence
      * @param fence   fence to register
      * @param data    data to attach to the fence
+     * @return Completable of the registration
+     */
+    static Completable registerWithData(Context context,
+                                        String name,
+                                        AwarenessFence fence,
+                                        @Nullable Bundle data) {
+        Context applicationContext = context.getApplicationContext();
+        String hash = hash(fence, KIND_DATA, data, null);
+        return enqueue(applicationContext, name, hash, false, Completable.defer(() -> Completable.create(new RegisterBackgroundFenceAction(applicationContext, name, fence,
+                FenceReceiver.createPendingIntent(applicationContext, fence.hashCode(), data), hash))));
+    }
+
+    /**
+     * Registers the given fence with extra data to be delivered on callbacks. The data is kept in
+     * the {@link FencePayloadStore} and only referenced by the PendingIntent.
+     * <p>
+     * Will receive updates in the background.
+     *
+     * @param context context to use
+     * @param name    name of the fence
+     * @param fence   fence to register
+     * @param data    data to attach to the fence
+     * @return Completable of the registration
+     */
+    static Completable registerWithStoredData(Context context,
+                                              String name,
+                                              AwarenessFence fence,
+                                              Bundle data) {
+        Context applicationContext = context.getApplicationContext();
+        String hash = hash(fence, KIND_STORED_DATA, data, null);
+        // the data is stored in order with the other operations on this fence, so that a pending
+        // unregistration doesn't remove it
+        Completable storeData = Completable.fromAction(() -> new FencePayloadStore(applicationContext).put(name, data));
+        return enqueue(applicationContext, name, hash, true, storeData.andThen(Completable.defer(() -> Completable.create(new RegisterBackgroundFenceAction(applicationContext, name, fence,
+                FenceReceiver.createPendingIntentForPayload(applicationContext, fence.hashCode(), name), hash)))));
+    }
+
+    /**
+     * Registers the given fence with a compact typed payload to be delivered on callbacks.
+     * <p>
+     * Will receive updates in the background.
+     *
+     * @param context context to use
+     * @param name    name of the fence
+     * @param fence   fence to register
+     * @param payload payload to attach to the fence
+     * @return Completable of the registration
      */
-    static void registerWithData(Context context,
-                                 String name,
-                                 AwarenessFence fence,
-                                 @Nullable Bundle data) {
-        new RegisterBackgroundFenceAction(context.getApplicationContext(), name, fence, data);
+    static Completable registerWithPayload(Context context,
+                                           String name,
+                                           AwarenessFence fence,
+                                           FencePayload payload) {
+        Context applicationContext = context.getApplicationContext();
+        byte[] encoded = payload.encode();
+        // payloads with equal values put in a different order are equal
+        String hash = hash(fence, KIND_PAYLOAD, null, payload.encodeSorted());
+        return enqueue(applicationContext, name, hash, false, Completable.defer(() -> Completable.create(new RegisterBackgroundFenceAction(applicationContext, name, fence,
+                FenceReceiver.createPendingIntentWithPayload(applicationContext, fence.hashCode(), encoded), hash))));
     }
 
-    private void onClientConnected(GoogleApiClient googleApiClient) {
+    /**
+     * Enqueues the given registration, which is skipped once it is executed if the fence is still
+     * registered with the same hash and, for fences with stored data, the data is still stored.
+     * Unless the fence was confirmed to be registered in this process, it is queried from the
+     * Awareness API first, as the system may have removed it while the process was not running.
+     * So only skips after the first one in a process avoid connecting to Google Play Services.
+     */
+    private static Completable enqueue(Context context, String name, String hash, boolean storedData, Completable registration) {
+        return FenceOperationQueue.enqueue(name, Completable.defer(() -> {
+            FenceRegistry registry = new FenceRegistry(context);
+            if (!registry.contains(name) || !hash.equals(registry.getHash(name))) {
+                return registration;
+            }
+            if (storedData && !new FencePayloadStore(context).contains(name)) {
+                return registration;
+            }
+            if (registry.isConfirmed(name)) {
+                return Completable.complete();
+            }
+
+            return QueryBackgroundFenceSingle.refresh(context, Collections.singleton(name))
+                    .map(stateMap -> stateMap.getFenceKeys().contains(name))
+                    .onErrorReturnItem(false)
+                    .flatMapCompletable(registered -> registered ? Completable.complete() : registration);
+        }));
+    }
+
+    /**
+     * @return hash of the definition of the fence and everything attached to its PendingIntent
+     */
+    private static String hash(AwarenessFence fence, String kind, @Nullable Bundle data, @Nullable byte[] payload) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(fence, 0);
+            parcel.writeString(kind);
+            parcel.writeBundle(data);
+            parcel.writeByteArray(payload);
+            return FenceRegistry.hash(parcel.marshall());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void onClientConnected(AwarenessConnection connection) {
+        metrics.recordConnect(System.nanoTime() - connectStart);
+
         FenceUpdateRequest fenceRequest = new FenceUpdateRequest.Builder()
-                .addFence(name, fence, FenceReceiver.createPendingIntent(context, fence.hashCode(), data))
+                .addFence(name, fence, pendingIntent)
                 .build();
 
-        Awareness.FenceApi.updateFences(googleApiClient, fenceRequest)
-                .setResultCallback(status -> {
-                    if (!status.isSuccess()) {
-                        onClientError(new ClientException("Adding fence failed. " + status.getStatusMessage()));
-                    }
-                    googleApiClient.disconnect();
-                });
+        long requestStart = System.nanoTime();
+        connection.updateFences(fenceRequest)
+                .subscribe(
+                        status -> {
+                            metrics.recordRequest(System.nanoTime() - requestStart);
+                            metrics.recordStatus(status.getStatusCode());
+                            if (status.isSuccess()) {
+                                new FenceRegistry(context).onRegistered(name, hash);
+                                emitter.onComplete();
+                            } else {
+                                onClientError(new ClientException("Adding fence failed. " + status.getStatusMessage()));
+                            }
+                            connection.disconnect();
+                        },
+                        throwable -> {
+                            metrics.recordError();
+                            onClientError(throwable);
+                            connection.disconnect();
+                        }
+                );
     }
 
     private void onClientError(Throwable throwable) {
+        new FenceRegistry(context).invalidate();
         Log.e("ReactiveAwareness", "Error when updating Fence in GoogleApiClient " + throwable.getLocalizedMessage());
+        emitter.onError(throwable);
     }
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import android.content.Context;
+import android.location.Location;
+import android.support.annotation.RequiresPermission;
+
+import com.google.android.gms.awareness.fence.AwarenessFence;
+import com.google.android.gms.awareness.fence.FenceUpdateRequest;
+import com.google.android.gms.awareness.fence.LocationFence;
+import com.google.android.gms.common.api.Status;
+import com.mtramin.reactiveawareness2.AwarenessConnection;
+import com.mtramin.reactiveawareness2.ReactiveSnapshot;
+import com.mtramin.reactiveawareness2.RequestRecorder;
+import com.mtramin.servant2.ClientException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+
+/**
+ * Manages more location fences than the Awareness API allows an application to register.
+ * <p>
+ * The full catalog of {@link Geofence}s is kept in a local spatial index and only the geofences
+ * nearest to the current location are registered as background fences. Additionally a boundary
+ * fence is registered around the current location that is left before any geofence that is not
+ * registered can be entered. Once the device leaves this boundary, the registered geofences are
+ * rotated to the ones nearest to the new location. Should the device be at the border of more
+ * geofences than can be registered, no boundary can be registered and the geofences are rotated
+ * on the next state change of a registered geofence instead.
+ * <p>
+ * Setting the catalog, rotating and clearing the geofences are executed one after another, so
+ * their updates of the registered fences never interleave.
+ * <p>
+ * State changes of the geofences are delivered to the {@link FenceReceiver} with the name of the
+ * {@link Geofence}, the rotation is handled by the {@link FenceReceiver} as well.
+ */
+public final class ShardedGeofences {
+
+    private static final String GEOFENCE_PREFIX = "ReactiveAwarenessGeofence_";
+    private static final String BOUNDARY_KEY = "ReactiveAwarenessGeofenceBoundary";
+    private static final String OPERATION_KEY = "ReactiveAwarenessGeofenceShards";
+    private static final double MIN_BOUNDARY_RADIUS_METERS = 1;
+
+    private ShardedGeofences() {
+    }
+
+    /**
+     * Replaces the catalog of geofences and registers the ones nearest to the current location.
+     *
+     * @param context          context to use
+     * @param geofences        all geofences to manage
+     * @param maxActiveFences  maximum number of geofences registered at the same time. Has to
+     *                         leave room for the boundary fence and other fences of the application
+     * @return Completable completing once the nearest geofences are registered
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    public static Completable setCatalog(Context context, Collection<Geofence> geofences, int maxActiveFences) {
+        if (maxActiveFences < 1) {
+            throw new IllegalArgumentException("maxActiveFences must be at least 1");
+        }
+
+        Context applicationContext = context.getApplicationContext();
+        List<Geofence> catalog = new ArrayList<>(geofences);
+        return enqueue(Completable.fromAction(() -> new GeofenceShardStore(applicationContext).setCatalog(catalog, maxActiveFences))
+                .andThen(rotate(applicationContext)));
+    }
+
+    /**
+     * Registers the geofences nearest to the current location, replacing the ones registered
+     * before. This happens automatically once the device moved, but can also be triggered
+     * manually, e.g. after a reboot.
+     *
+     * @param context context to use
+     * @return Completable completing once the nearest geofences are registered
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    public static Completable reshard(Context context) {
+        return enqueue(rotate(context.getApplicationContext()));
+    }
+
+    /**
+     * Unregisters all geofences and deletes the catalog.
+     *
+     * @param context context to use
+     * @return Completable completing once all geofences are unregistered
+     */
+    public static Completable clear(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        return enqueue(Single.defer(() -> {
+            GeofenceShardStore store = new GeofenceShardStore(applicationContext);
+
+            List<String> keys = new ArrayList<>();
+            keys.add(BOUNDARY_KEY);
+            for (String name : store.getActive()) {
+                keys.add(GEOFENCE_PREFIX + name);
+            }
+
+            FenceUpdateRequest.Builder request = new FenceUpdateRequest.Builder();
+            for (String key : keys) {
+                request.removeFence(key);
+            }
+
+            return updateFences(applicationContext, request.build())
+                    .doOnSuccess(status -> {
+                        store.clear();
+                        new FenceRegistry(applicationContext).onUnregistered(keys);
+                    });
+        }).toCompletable());
+    }
+
+    /**
+     * @param fenceKey key of a fence registered with the Awareness API
+     * @return name of the geofence or {@code null} if the fence is no geofence
+     */
+    static String getGeofenceName(String fenceKey) {
+        return fenceKey.startsWith(GEOFENCE_PREFIX) ? fenceKey.substring(GEOFENCE_PREFIX.length()) : null;
+    }
+
+    /**
+     * @param fenceKey key of a fence registered with the Awareness API
+     * @return {@code true} if the fence is the boundary fence of the registered geofences
+     */
+    static boolean isBoundary(String fenceKey) {
+        return BOUNDARY_KEY.equals(fenceKey);
+    }
+
+    /**
+     * @param context context to use
+     * @return {@code true} if no boundary could be registered, so the geofences have to be rotated
+     * on state changes of the registered geofences
+     */
+    static boolean isUnbounded(Context context) {
+        return new GeofenceShardStore(context).isUnbounded();
+    }
+
+    /**
+     * Enqueues the given operation once the returned Completable is subscribed to.
+     */
+    private static Completable enqueue(Completable operation) {
+        return Completable.defer(() -> FenceOperationQueue.enqueue(OPERATION_KEY, operation));
+    }
+
+    @SuppressWarnings("MissingPermission")
+    private static Completable rotate(Context context) {
+        return ReactiveSnapshot.create(context, FenceTransport.get())
+                .getLocation()
+                .flatMap(location -> update(context, location))
+                .toCompletable();
+    }
+
+    @SuppressWarnings("MissingPermission")
+    private static Single<Status> update(Context context, Location location) {
+        GeofenceShardStore store = new GeofenceShardStore(context);
+        int maxActiveFences = store.getMaxActiveFences();
+        List<GeofenceIndex.Nearby> nearest = store.getIndex()
+                .nearest(location.getLatitude(), location.getLongitude(), maxActiveFences + 1);
+
+        // no geofence that is not registered can be entered without leaving the boundary first, so
+        // its radius is the distance to the border of the nearest geofence that is not registered
+        boolean bounded = nearest.size() > maxActiveFences;
+        double radius = bounded ? nearest.get(maxActiveFences).borderDistanceMeters : 0;
+        boolean boundary = bounded && radius >= MIN_BOUNDARY_RADIUS_METERS;
+
+        FenceUpdateRequest.Builder request = new FenceUpdateRequest.Builder();
+        Map<String, AwarenessFence> added = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        Set<String> registered = store.isStale() ? new HashSet<String>() : store.getActive();
+        Set<String> active = new HashSet<>();
+
+        for (int i = 0; i < Math.min(maxActiveFences, nearest.size()); i++) {
+            Geofence geofence = nearest.get(i).geofence;
+            active.add(geofence.getName());
+            if (!registered.contains(geofence.getName())) {
+                String key = GEOFENCE_PREFIX + geofence.getName();
+                AwarenessFence fence = LocationFence.in(geofence.getLatitude(), geofence.getLongitude(), geofence.getRadiusMeters(), 0);
+                request.addFence(key, fence, FenceReceiver.createPendingIntent(context, key.hashCode(), null));
+                added.put(key, fence);
+            }
+        }
+
+        for (String name : store.getActive()) {
+            if (!active.contains(name)) {
+                request.removeFence(GEOFENCE_PREFIX + name);
+                removed.add(GEOFENCE_PREFIX + name);
+            }
+        }
+
+        if (boundary) {
+            AwarenessFence fence = LocationFence.exiting(location.getLatitude(), location.getLongitude(), radius);
+            request.addFence(BOUNDARY_KEY, fence, FenceReceiver.createPendingIntent(context, BOUNDARY_KEY.hashCode(), null));
+            added.put(BOUNDARY_KEY, fence);
+        } else if (store.hasBoundary()) {
+            request.removeFence(BOUNDARY_KEY);
+            removed.add(BOUNDARY_KEY);
+        }
+
+        return updateFences(context, request.build())
+                .doOnSuccess(status -> {
+                    store.setActive(active, boundary, bounded && !boundary);
+
+                    FenceRegistry registry = new FenceRegistry(context);
+                    for (Map.Entry<String, AwarenessFence> fence : added.entrySet()) {
+                        registry.onRegistered(fence.getKey(), FenceRegistry.hash(fence.getValue()));
+                    }
+                    registry.onUnregistered(removed);
+                });
+    }
+
+    private static Single<Status> updateFences(Context context, FenceUpdateRequest request) {
+        RequestRecorder metrics = RequestRecorder.get(FenceMetrics.SHARD);
+
+        return FenceTransport.get().connect(context)
+                .flatMap(connection -> updateFences(connection, request, metrics))
+                .flatMap(status -> {
+                    metrics.recordStatus(status.getStatusCode());
+                    if (!status.isSuccess()) {
+                        return Single.error(new ClientException("Updating geofences failed. " + status.getStatusMessage()));
+                    }
+                    return Single.just(status);
+                })
+                .doOnError(throwable -> {
+                    metrics.recordError();
+                    new FenceRegistry(context).invalidate();
+                });
+    }
+
+    private static Single<Status> updateFences(AwarenessConnection connection, FenceUpdateRequest request, RequestRecorder metrics) {
+        long requestStart = System.nanoTime();
+        return connection.updateFences(request)
+                .doOnSuccess(status -> metrics.recordRequest(System.nanoTime() - requestStart))
+                .doOnEvent((status, throwable) -> connection.disconnect())
+                .doOnDispose(connection::disconnect);
+    }
+}
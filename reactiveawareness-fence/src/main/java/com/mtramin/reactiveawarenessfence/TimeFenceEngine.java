@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Fires the transitions of all {@link LocalTimeFence}s from a single {@link TimerWheel}.
+ * <p>
+ * Only one wake-up is scheduled at a time, for the next tick at which the wheel has work to do,
+ * no matter how many fences are observed.
+ */
+class TimeFenceEngine {
+
+    private static final TimeFenceEngine INSTANCE = new TimeFenceEngine(Schedulers.computation());
+
+    private final Scheduler.Worker worker;
+    private final TimerWheel wheel;
+
+    private Disposable wakeUp;
+    private long wakeUpTime = Long.MAX_VALUE;
+
+    private TimeFenceEngine(Scheduler scheduler) {
+        this.worker = scheduler.createWorker();
+        this.wheel = new TimerWheel(System.currentTimeMillis());
+    }
+
+    static TimeFenceEngine get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs the given task at the given time on the background scheduler.
+     *
+     * @param timeMillis time to run the task at, in milliseconds since the epoch
+     * @param task       task to run
+     * @return Disposable that cancels the task
+     */
+    Disposable schedule(long timeMillis, Runnable task) {
+        if (timeMillis <= System.currentTimeMillis()) {
+            return worker.schedule(task);
+        }
+
+        TimerWheel.Entry entry;
+        synchronized (this) {
+            entry = wheel.schedule(timeMillis, task);
+            scheduleWakeUp();
+        }
+
+        return Disposables.fromRunnable(() -> {
+            synchronized (this) {
+                wheel.cancel(entry);
+            }
+        });
+    }
+
+    private void scheduleWakeUp() {
+        long next = wheel.nextTick();
+        if (next >= wakeUpTime) {
+            return;
+        }
+
+        if (wakeUp != null) {
+            wakeUp.dispose();
+        }
+        wakeUpTime = next;
+        wakeUp = worker.schedule(this::onWakeUp, Math.max(0, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void onWakeUp() {
+        List<Runnable> expired = new ArrayList<>();
+        synchronized (this) {
+            wakeUp = null;
+            wakeUpTime = Long.MAX_VALUE;
+            wheel.advanceTo(System.currentTimeMillis(), expired);
+            if (!wheel.isEmpty()) {
+                scheduleWakeUp();
+            }
+        }
+
+        for (Runnable task : expired) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawarenessfence;
+
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel with O(1) insertion and cancellation.
+ * <p>
+ * Timers are kept in {@value #LEVELS} levels of {@value #SLOTS} slots. Level {@code k} covers
+ * {@code 64^k} ticks per slot, so timers are placed by the distance to their deadline and moved
+ * down a level whenever their slot is reached. Occupied slots are tracked in a bitmask per level,
+ * which allows jumping directly to the next tick at which a timer expires or has to be moved,
+ * instead of visiting every tick.
+ * <p>
+ * Ticks are absolute, e.g. milliseconds since the epoch. This class is not thread-safe.
+ */
+final class TimerWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 5;
+
+    private final Entry[] heads = new Entry[LEVELS * SLOTS];
+    private final Entry[] tails = new Entry[LEVELS * SLOTS];
+    private final long[] occupied = new long[LEVELS];
+
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param currentTick tick the wheel starts at
+     */
+    TimerWheel(long currentTick) {
+        this.currentTick = currentTick;
+    }
+
+    /**
+     * Schedules a task. Tasks whose deadline is not after the current tick expire on the next
+     * advance.
+     *
+     * @param deadline tick at which the task expires
+     * @param task     task to return once expired
+     * @return entry that can be used to cancel the task
+     */
+    Entry schedule(long deadline, Runnable task) {
+        Entry entry = new Entry(Math.max(deadline, currentTick + 1), task);
+        insert(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Removes a task from the wheel. Has no effect if it expired or was cancelled already.
+     *
+     * @param entry entry of the task
+     */
+    void cancel(Entry entry) {
+        if (entry.index < 0) {
+            return;
+        }
+        unlink(entry);
+        size--;
+    }
+
+    /**
+     * @return {@code true} if no tasks are scheduled
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the next tick at which a task expires or has to be moved to a lower level or
+     * {@link Long#MAX_VALUE} if no tasks are scheduled
+     */
+    long nextTick() {
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            long mask = occupied[level];
+            if (mask == 0) {
+                continue;
+            }
+
+            int shift = level * BITS;
+            long block = currentTick >>> shift;
+            int position = (int) (block & SLOT_MASK);
+            long offset = Long.numberOfTrailingZeros(Long.rotateRight(mask, position + 1)) + 1;
+            long tick = (block + offset) << shift;
+            if (tick < next) {
+                next = tick;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Advances the wheel to the given tick.
+     *
+     * @param tick    tick to advance to
+     * @param expired list the tasks that expired are added to, in order of their deadline
+     */
+    void advanceTo(long tick, List<Runnable> expired) {
+        while (size > 0) {
+            long next = nextTick();
+            if (next > tick) {
+                break;
+            }
+            currentTick = next;
+            process(next, expired);
+        }
+
+        if (tick > currentTick) {
+            currentTick = tick;
+        }
+    }
+
+    private void process(long tick, List<Runnable> expired) {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * BITS;
+            if ((tick & ((1L << shift) - 1)) == 0) {
+                int index = level * SLOTS + (int) ((tick >>> shift) & SLOT_MASK);
+                Entry entry = detach(index, level);
+                while (entry != null) {
+                    Entry next = entry.next;
+                    entry.next = null;
+                    if (entry.deadline <= tick) {
+                        expire(entry, expired);
+                    } else {
+                        insert(entry);
+                    }
+                    entry = next;
+                }
+            }
+        }
+
+        Entry entry = detach((int) (tick & SLOT_MASK), 0);
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.next = null;
+            expire(entry, expired);
+            entry = next;
+        }
+    }
+
+    private void expire(Entry entry, List<Runnable> expired) {
+        size--;
+        expired.add(entry.task);
+    }
+
+    private void insert(Entry entry) {
+        long delta = entry.deadline - currentTick;
+
+        int level = 0;
+        long block = entry.deadline;
+        while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * BITS)) {
+            level++;
+        }
+
+        if (level > 0) {
+            int shift = level * BITS;
+            if (delta >= 1L << ((level + 1) * BITS)) {
+                // beyond the range of the wheel, moved down once its slot is reached
+                block = (currentTick >>> shift) + SLOTS;
+            } else {
+                block = entry.deadline >>> shift;
+            }
+        }
+
+        int index = level * SLOTS + (int) (block & SLOT_MASK);
+        entry.index = index;
+        entry.previous = tails[index];
+        entry.next = null;
+        if (tails[index] == null) {
+            heads[index] = entry;
+        } else {
+            tails[index].next = entry;
+        }
+        tails[index] = entry;
+        occupied[level] |= 1L << (index & SLOT_MASK);
+    }
+
+    private void unlink(Entry entry) {
+        int index = entry.index;
+        if (entry.previous == null) {
+            heads[index] = entry.next;
+        } else {
+            entry.previous.next = entry.next;
+        }
+        if (entry.next == null) {
+            tails[index] = entry.previous;
+        } else {
+            entry.next.previous = entry.previous;
+        }
+        if (heads[index] == null) {
+            occupied[index / SLOTS] &= ~(1L << (index & SLOT_MASK));
+        }
+        entry.index = -1;
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    /**
+     * Removes all entries of a slot.
+     *
+     * @return first entry of the slot, the following ones are linked through {@link Entry#next}
+     */
+    private Entry detach(int index, int level) {
+        Entry head = heads[index];
+        heads[index] = null;
+        tails[index] = null;
+        occupied[level] &= ~(1L << (index & SLOT_MASK));
+
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            entry.index = -1;
+            entry.previous = null;
+        }
+        return head;
+    }
+
+    /**
+     * A task scheduled in the wheel.
+     */
+    static final class Entry {
+
+        private final long deadline;
+        private final Runnable task;
+        private int index = -1;
+        private Entry previous;
+        private Entry next;
+
+        private Entry(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+}
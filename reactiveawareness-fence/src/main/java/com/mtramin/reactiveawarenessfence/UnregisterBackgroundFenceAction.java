@@ -19,22 +19,48 @@ package com.mtramin.reactiveawarenessfence;
 import android.content.Context;
 import android.util.Log;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.fence.FenceUpdateRequest;
-import com.google.android.gms.common.api.GoogleApiClient;
+import com.mtramin.reactiveawareness2.AwarenessConnection;
+import com.mtramin.reactiveawareness2.RequestRecorder;
 import com.mtramin.servant2.ClientException;
-import com.mtramin.servant2.Servant;
+
+import java.util.Collections;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
 
 /**
  * Action to unregister a background fence.
  */
-class UnregisterBackgroundFenceAction {
+class UnregisterBackgroundFenceAction implements CompletableOnSubscribe {
 
+    private final RequestRecorder metrics = RequestRecorder.get(FenceMetrics.UNREGISTER);
+
+    private final Context context;
     private String name;
 
+    private CompletableEmitter emitter;
+    private long connectStart;
+
     private UnregisterBackgroundFenceAction(Context context, String name) {
+        this.context = context;
         this.name = name;
-        Servant.actions(context, Awareness.API, this::onClientConnected, this::onClientError);
+    }
+
+    @Override
+    public void subscribe(CompletableEmitter emitter) throws Exception {
+        this.emitter = emitter;
+        this.connectStart = System.nanoTime();
+
+        FenceTransport.get().connect(context)
+                .subscribe(
+                        this::onClientConnected,
+                        throwable -> {
+                            metrics.recordError();
+                            onClientError(throwable);
+                        }
+                );
     }
 
     /**
@@ -42,26 +68,45 @@ class UnregisterBackgroundFenceAction {
      *
      * @param context context to use
      * @param name    name of the fence to unregister
+     * @return Completable of the unregistration
      */
-    static void unregister(Context context, String name) {
-        new UnregisterBackgroundFenceAction(context.getApplicationContext(), name);
+    static Completable unregister(Context context, String name) {
+        return FenceOperationQueue.enqueue(name, Completable.create(new UnregisterBackgroundFenceAction(context.getApplicationContext(), name)));
     }
 
-    private void onClientConnected(GoogleApiClient googleApiClient) {
+    private void onClientConnected(AwarenessConnection connection) {
+        metrics.recordConnect(System.nanoTime() - connectStart);
+
         FenceUpdateRequest fenceRequest = new FenceUpdateRequest.Builder()
                 .removeFence(name)
                 .build();
 
-        Awareness.FenceApi.updateFences(googleApiClient, fenceRequest)
-                .setResultCallback(status -> {
-                    if (!status.isSuccess()) {
-                        onClientError(new ClientException("Unable to unregister fence. " + status.getStatusMessage()));
-                    }
-                    googleApiClient.disconnect();
-                });
+        long requestStart = System.nanoTime();
+        connection.updateFences(fenceRequest)
+                .subscribe(
+                        status -> {
+                            metrics.recordRequest(System.nanoTime() - requestStart);
+                            metrics.recordStatus(status.getStatusCode());
+                            if (status.isSuccess()) {
+                                new FenceRegistry(context).onUnregistered(Collections.singleton(name));
+                                new FencePayloadStore(context).remove(name);
+                                emitter.onComplete();
+                            } else {
+                                onClientError(new ClientException("Unable to unregister fence. " + status.getStatusMessage()));
+                            }
+                            connection.disconnect();
+                        },
+                        throwable -> {
+                            metrics.recordError();
+                            onClientError(throwable);
+                            connection.disconnect();
+                        }
+                );
     }
 
     private void onClientError(Throwable throwable) {
+        new FenceRegistry(context).invalidate();
         Log.e("ReactiveAwareness", "Error when updating Fence in GoogleApiClient: " + throwable.getLocalizedMessage());
+        emitter.onError(throwable);
     }
 }
@@ -19,10 +19,7 @@ package com.mtramin.reactiveawareness2;
 import android.content.Context;
 import android.support.annotation.RequiresPermission;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.snapshot.DetectedActivityResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
 import com.google.android.gms.location.ActivityRecognitionResult;
 
 import io.reactivex.Single;
@@ -32,13 +29,13 @@ import io.reactivex.Single;
  */
 class ActivitySingle extends BaseAwarenessSingle<ActivityRecognitionResult, DetectedActivityResult> {
 
-    private ActivitySingle(Context context) {
-        super(context);
+    private ActivitySingle(Context context, AwarenessTransport transport, long timeoutMillis) {
+        super(context, transport, SnapshotType.ACTIVITY, timeoutMillis);
     }
 
     @RequiresPermission("com.google.android.gms.permission.ACTIVITY_RECOGNITION")
-    public static Single<ActivityRecognitionResult> create(Context context) {
-        return Single.create(new ActivitySingle(context));
+    public static Single<ActivityRecognitionResult> create(Context context, AwarenessTransport transport, long timeoutMillis) {
+        return Single.create(new ActivitySingle(context, transport, timeoutMillis));
     }
 
     @Override
@@ -48,7 +45,7 @@ class ActivitySingle extends BaseAwarenessSingle<ActivityRecognitionResult, Dete
 
     @Override
     @RequiresPermission("com.google.android.gms.permission.ACTIVITY_RECOGNITION")
-    protected PendingResult<? super DetectedActivityResult> createRequest(GoogleApiClient googleApiClient) {
-        return Awareness.SnapshotApi.getDetectedActivity(googleApiClient);
+    protected Single<DetectedActivityResult> createRequest(AwarenessConnection connection) {
+        return connection.getDetectedActivity();
     }
 }
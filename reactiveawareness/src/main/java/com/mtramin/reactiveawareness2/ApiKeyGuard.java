@@ -22,6 +22,10 @@ import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.util.Log;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Util class providing checks that meta-data is available in the application manifest.
  */
@@ -31,6 +35,12 @@ class ApiKeyGuard {
     static final String API_KEY_PLACES_API = "com.google.android.geo.API_KEY";
     static final String API_KEY_BEACON_API = "com.google.android.nearby.messages.API_KEY";
 
+    /**
+     * Keys that were already found in the manifest. As the manifest can not change at runtime
+     * they don't have to be looked up again.
+     */
+    private static final Set<String> verifiedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     /**
      * Verifies that the meta-data with the given key is provided in the application manifest.
      * If it is not provided, {@link ApiKeyException} is thrown.
@@ -40,7 +50,13 @@ class ApiKeyGuard {
      * @throws ApiKeyException
      */
     public static void guardWithApiKey(Context context, String key) {
-        if (!hasApiKey(context, key)) {
+        if (verifiedKeys.contains(key)) {
+            return;
+        }
+
+        if (hasApiKey(context, key)) {
+            verifiedKeys.add(key);
+        } else {
             throw new ApiKeyException(key + " not found in AndroidManifest.xml. Please visit https://developers.google.com/awareness/android-api/get-started for more details.");
         }
     }
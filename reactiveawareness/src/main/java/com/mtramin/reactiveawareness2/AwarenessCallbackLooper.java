@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+/**
+ * Looper on which results of the Awareness API are delivered.
+ * <p>
+ * By default ReactiveAwareness owns a dedicated background {@link HandlerThread} for all
+ * {@link com.google.android.gms.common.api.PendingResult} callbacks and fence broadcasts, so
+ * Awareness results never hop through the main thread. Use {@link #set(Looper)} to deliver them on
+ * a different Looper, e.g. {@link Looper#getMainLooper()}.
+ * <p>
+ * Results are emitted on this Looper, so use {@code observeOn} to continue on another thread.
+ */
+public final class AwarenessCallbackLooper {
+
+    private static final String THREAD_NAME = "ReactiveAwarenessCallbacks";
+    private static final Object LOCK = new Object();
+
+    private static HandlerThread thread;
+    private static volatile Handler handler;
+
+    private AwarenessCallbackLooper() {
+    }
+
+    /**
+     * Sets the Looper that results are delivered on. Affects connections that are created
+     * afterwards.
+     *
+     * @param looper Looper to use or {@code null} to use the background thread of this library
+     */
+    public static void set(@Nullable Looper looper) {
+        synchronized (LOCK) {
+            handler = looper == null ? null : new Handler(looper);
+        }
+    }
+
+    /**
+     * @return Looper that results are delivered on
+     */
+    public static Looper get() {
+        return getHandler().getLooper();
+    }
+
+    /**
+     * @return Handler of the Looper that results are delivered on
+     */
+    public static Handler getHandler() {
+        Handler current = handler;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (LOCK) {
+            if (handler == null) {
+                if (thread == null) {
+                    thread = new HandlerThread(THREAD_NAME);
+                    thread.start();
+                }
+                handler = new Handler(thread.getLooper());
+            }
+            return handler;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.support.annotation.RequiresPermission;
+
+import com.google.android.gms.awareness.fence.FenceQueryRequest;
+import com.google.android.gms.awareness.fence.FenceQueryResult;
+import com.google.android.gms.awareness.fence.FenceUpdateRequest;
+import com.google.android.gms.awareness.snapshot.BeaconStateResult;
+import com.google.android.gms.awareness.snapshot.DetectedActivityResult;
+import com.google.android.gms.awareness.snapshot.HeadphoneStateResult;
+import com.google.android.gms.awareness.snapshot.LocationResult;
+import com.google.android.gms.awareness.snapshot.PlacesResult;
+import com.google.android.gms.awareness.snapshot.WeatherResult;
+import com.google.android.gms.awareness.state.BeaconState;
+import com.google.android.gms.common.api.Status;
+
+import java.util.Collection;
+
+import io.reactivex.Single;
+
+/**
+ * A connection to the Awareness API created by an {@link AwarenessTransport}.
+ * <p>
+ * Every request is executed once the returned {@link Single} is subscribed to. Disposing the
+ * {@link Single} cancels the request. The results are delivered as returned by the Awareness API,
+ * so callers have to check the {@link Status} of each result.
+ */
+public interface AwarenessConnection {
+
+    /**
+     * @return Single of the currently detected activity
+     */
+    @RequiresPermission("com.google.android.gms.permission.ACTIVITY_RECOGNITION")
+    Single<DetectedActivityResult> getDetectedActivity();
+
+    /**
+     * @param typeFilters Beacon TypeFilters to filter for
+     * @return Single of the currently nearby beacons
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    Single<BeaconStateResult> getBeaconState(Collection<BeaconState.TypeFilter> typeFilters);
+
+    /**
+     * @return Single of the current headphone state
+     */
+    Single<HeadphoneStateResult> getHeadphoneState();
+
+    /**
+     * @return Single of the current location
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    Single<LocationResult> getLocation();
+
+    /**
+     * @return Single of the currently nearby places
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    Single<PlacesResult> getPlaces();
+
+    /**
+     * @return Single of the weather at the current location
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    Single<WeatherResult> getWeather();
+
+    /**
+     * @param request fences to add or remove
+     * @return Single of the status of the fence update
+     */
+    Single<Status> updateFences(FenceUpdateRequest request);
+
+    /**
+     * @param request fences to query
+     * @return Single of the queried fence states
+     */
+    Single<FenceQueryResult> queryFences(FenceQueryRequest request);
+
+    /**
+     * Disconnects this connection. Calling this more than once has no effect.
+     */
+    void disconnect();
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import com.mtramin.servant2.ClientException;
+
+/**
+ * Exception thrown when a request to the Awareness API returned an unsuccessful status.
+ */
+public class AwarenessStatusException extends ClientException {
+
+    private final int statusCode;
+
+    public AwarenessStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return the status code returned by the Awareness API as defined in
+     * {@link com.google.android.gms.common.api.CommonStatusCodes}
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
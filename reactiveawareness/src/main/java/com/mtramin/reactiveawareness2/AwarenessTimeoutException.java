@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+/**
+ * Exception thrown when a snapshot request did not deliver a result within its timeout.
+ */
+public class AwarenessTimeoutException extends RuntimeException {
+
+    private final SnapshotType type;
+    private final long timeoutMillis;
+
+    public AwarenessTimeoutException(SnapshotType type, long timeoutMillis) {
+        super("Request for " + type + " timed out after " + timeoutMillis + "ms");
+        this.type = type;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return type of the snapshot that was requested
+     */
+    public SnapshotType getType() {
+        return type;
+    }
+
+    /**
+     * @return timeout that elapsed in milliseconds
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
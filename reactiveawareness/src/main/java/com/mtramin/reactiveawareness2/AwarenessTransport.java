@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.content.Context;
+
+import io.reactivex.Single;
+
+/**
+ * Transport used by ReactiveAwareness to talk to the Awareness API.
+ * <p>
+ * By default all requests go through {@link PlayServicesTransport} which connects a
+ * GoogleApiClient and calls the Snapshot and Fence APIs of Google Play Services. Providing a
+ * different transport, e.g. {@link FakeAwarenessTransport}, allows running the reactive pipeline
+ * of this library without a device or Google Play Services being available.
+ */
+public interface AwarenessTransport {
+
+    /**
+     * Connects to the Awareness API. The resulting {@link AwarenessConnection} can be used for
+     * Snapshot and Fence requests and has to be disconnected once it is not needed anymore.
+     * <p>
+     * Disposing the returned {@link Single} before it emitted will abort the connection attempt.
+     *
+     * @param context context to use
+     * @return Single emitting the connected {@link AwarenessConnection}
+     */
+    Single<AwarenessConnection> connect(Context context);
+}
@@ -18,15 +18,135 @@ package com.mtramin.reactiveawareness2;
 
 import android.content.Context;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.common.api.Result;
-import com.mtramin.servant2.GoogleApiClientRequestSingle;
+import com.google.android.gms.common.api.Status;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 
 /**
- * Base Single for Awareness Requests in a GoogleApiClient
+ * Base Single for Awareness Requests executed through an {@link AwarenessTransport}.
+ * <p>
+ * Connects to the Awareness API, executes the request created by
+ * {@link #createRequest(AwarenessConnection)} and delivers the unwrapped result. The connection
+ * will be disconnected once the request finished or the Single is disposed.
+ * <p>
+ * Disposing the Single cancels a connection attempt or pending request right away and releases
+ * the connection. Results arriving after disposal are not unwrapped.
+ * <p>
+ * Should no result be delivered within the timeout, the request will be cancelled, the connection
+ * released and an {@link AwarenessTimeoutException} emitted.
+ * <p>
+ * The time spent connecting, waiting for the result and unwrapping it as well as the status of
+ * the result are recorded in the {@link RequestMetrics} of the {@link SnapshotType}.
  */
-abstract class BaseAwarenessSingle<T, R extends Result> extends GoogleApiClientRequestSingle<T, R> {
-    BaseAwarenessSingle(Context context) {
-        super(context, Awareness.API);
+abstract class BaseAwarenessSingle<T, R extends Result> implements SingleOnSubscribe<T> {
+
+    private final Context context;
+    private final AwarenessTransport transport;
+    private final SnapshotType type;
+    private final long timeoutMillis;
+    private final RequestRecorder metrics;
+
+    BaseAwarenessSingle(Context context, AwarenessTransport transport, SnapshotType type, long timeoutMillis) {
+        this.context = context;
+        this.transport = transport;
+        this.type = type;
+        this.timeoutMillis = timeoutMillis;
+        this.metrics = RequestRecorder.get(type);
+    }
+
+    @Override
+    public void subscribe(SingleEmitter<T> emitter) throws Exception {
+        long connectStart = System.nanoTime();
+        // the emitter also disposes the request once it terminated, only a disposal before that
+        // is a cancellation
+        AtomicBoolean done = new AtomicBoolean();
+
+        Disposable disposable = transport.connect(context)
+                .doOnSuccess(connection -> metrics.recordConnect(System.nanoTime() - connectStart))
+                .doOnError(throwable -> metrics.recordError())
+                .flatMap(this::request)
+                .timeout(timeoutMillis, TimeUnit.MILLISECONDS, Schedulers.computation(), Single.defer(this::onTimeout))
+                .subscribe(
+                        result -> {
+                            if (done.compareAndSet(false, true)) {
+                                onResult(emitter, result);
+                            }
+                        },
+                        throwable -> {
+                            if (done.compareAndSet(false, true)) {
+                                emitter.onError(throwable);
+                            }
+                        }
+                );
+
+        emitter.setCancellable(() -> {
+            if (done.compareAndSet(false, true)) {
+                metrics.recordCancel();
+            }
+            disposable.dispose();
+        });
+    }
+
+    private Single<R> request(AwarenessConnection connection) {
+        return Single.defer(() -> timedRequest(connection))
+                .doOnEvent((result, throwable) -> connection.disconnect())
+                .doOnDispose(connection::disconnect);
+    }
+
+    private Single<R> timedRequest(AwarenessConnection connection) {
+        long requestStart = System.nanoTime();
+        return createRequest(connection)
+                .doOnSuccess(result -> metrics.recordRequest(System.nanoTime() - requestStart))
+                .doOnError(throwable -> metrics.recordError());
+    }
+
+    private Single<R> onTimeout() {
+        metrics.recordTimeout();
+        return Single.error(new AwarenessTimeoutException(type, timeoutMillis));
     }
+
+    private void onResult(SingleEmitter<T> emitter, R result) {
+        if (emitter.isDisposed()) {
+            // disposed while the result was delivered, nobody is interested in the value anymore
+            return;
+        }
+
+        Status status = result.getStatus();
+        metrics.recordStatus(status.getStatusCode());
+
+        if (!status.isSuccess()) {
+            emitter.onError(new AwarenessStatusException(status.getStatusCode(), "Awareness request failed. " + status.getStatusMessage()));
+            return;
+        }
+
+        long unwrapStart = System.nanoTime();
+        T value = unwrap(result);
+        metrics.recordUnwrap(System.nanoTime() - unwrapStart);
+
+        emitter.onSuccess(value);
+    }
+
+    /**
+     * Creates the request to execute with the given connection
+     *
+     * @param connection connection to the Awareness API
+     * @return Single result of the request
+     */
+    protected abstract Single<R> createRequest(AwarenessConnection connection);
+
+    /**
+     * Extracts the value to emit from a successful result
+     *
+     * @param result result of the request
+     * @return value to emit
+     */
+    protected abstract T unwrap(R result);
 }
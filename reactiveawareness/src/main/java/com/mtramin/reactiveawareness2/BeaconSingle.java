@@ -21,12 +21,9 @@ import android.os.Build;
 import android.support.annotation.RequiresApi;
 import android.support.annotation.RequiresPermission;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.snapshot.BeaconStateResult;
 import com.google.android.gms.awareness.state.BeaconState;
 import com.google.android.gms.awareness.state.BeaconState.TypeFilter;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -42,33 +39,33 @@ class BeaconSingle extends BaseAwarenessSingle<List<BeaconState.BeaconInfo>, Bea
 
     private Collection<TypeFilter> typeFilters;
 
-    private BeaconSingle(Context context, TypeFilter... typeFilters) {
-        super(context);
+    private BeaconSingle(Context context, AwarenessTransport transport, long timeoutMillis, TypeFilter... typeFilters) {
+        super(context, transport, SnapshotType.BEACONS, timeoutMillis);
         this.typeFilters = new ArrayList<>(Arrays.asList(typeFilters));
     }
 
-    private BeaconSingle(Context context, Collection<TypeFilter> typeFilters) {
-        super(context);
+    private BeaconSingle(Context context, AwarenessTransport transport, long timeoutMillis, Collection<TypeFilter> typeFilters) {
+        super(context, transport, SnapshotType.BEACONS, timeoutMillis);
         this.typeFilters = typeFilters;
     }
 
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
     @RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
-    public static Single<List<BeaconState.BeaconInfo>> create(Context context, TypeFilter... typeFilters) {
-        return Single.create(new BeaconSingle(context, typeFilters));
+    public static Single<List<BeaconState.BeaconInfo>> create(Context context, AwarenessTransport transport, long timeoutMillis, TypeFilter... typeFilters) {
+        return Single.create(new BeaconSingle(context, transport, timeoutMillis, typeFilters));
     }
 
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
     @RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
-    public static Single<List<BeaconState.BeaconInfo>> create(Context context, Collection<TypeFilter> typeFilters) {
-        return Single.create(new BeaconSingle(context, typeFilters));
+    public static Single<List<BeaconState.BeaconInfo>> create(Context context, AwarenessTransport transport, long timeoutMillis, Collection<TypeFilter> typeFilters) {
+        return Single.create(new BeaconSingle(context, transport, timeoutMillis, typeFilters));
     }
 
     @Override
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
     @RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
-    protected PendingResult<BeaconStateResult> createRequest(GoogleApiClient googleApiClient) {
-        return Awareness.SnapshotApi.getBeaconState(googleApiClient, typeFilters);
+    protected Single<BeaconStateResult> createRequest(AwarenessConnection connection) {
+        return connection.getBeaconState(typeFilters);
     }
 
     @Override
@@ -0,0 +1,427 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.location.Location;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.awareness.fence.AwarenessFence;
+import com.google.android.gms.awareness.fence.DetectedActivityFence;
+import com.google.android.gms.awareness.fence.FenceQueryRequest;
+import com.google.android.gms.awareness.fence.FenceQueryResult;
+import com.google.android.gms.awareness.fence.FenceState;
+import com.google.android.gms.awareness.fence.FenceUpdateRequest;
+import com.google.android.gms.awareness.fence.HeadphoneFence;
+import com.google.android.gms.awareness.fence.LocationFence;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.ActivityRecognitionResult;
+import com.google.android.gms.location.DetectedActivity;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Single;
+import io.reactivex.functions.Function;
+
+/**
+ * Caches snapshots until they change instead of requesting them again.
+ * <p>
+ * Once a value of a cached type was received, an internal fence is registered that triggers when
+ * the value changes: leaving a radius around the received location, stopping the received
+ * activity or (un)plugging the headphones. Until the fence triggers, requests of that type are
+ * answered from the cache. A triggered fence only invalidates the value of its own type and
+ * refreshes it in the background.
+ * <p>
+ * Values are only cached once their fence was registered successfully, so a value is never served
+ * without a trigger that invalidates it. Activities that can't be fenced, e.g.
+ * {@link DetectedActivity#UNKNOWN} or {@link DetectedActivity#TILTING}, are not cached.
+ * <p>
+ * Fence keys and the PendingIntent are scoped to the instance, so multiple instances don't replace
+ * each others fences. {@link #release()} removes the fences and stops listening for them.
+ * <p>
+ * Fence keys are also scoped to the process. Fences of caches that were never released, e.g.
+ * because their process was killed, can't trigger anything anymore. Before the first fence of a
+ * process is registered, all internal fences of other processes are removed.
+ */
+class ChangeTriggeredCache {
+
+    static final Set<SnapshotType> SUPPORTED_TYPES = EnumSet.of(SnapshotType.LOCATION, SnapshotType.ACTIVITY, SnapshotType.HEADPHONES);
+
+    /**
+     * Prefix of the keys of all internal fences
+     */
+    static final String FENCE_KEY_PREFIX = "ReactiveAwarenessSnapshot_";
+
+    private static final String ACTION_SUFFIX = ".REACTIVE_AWARENESS_SNAPSHOT_CHANGED_";
+    private static final AtomicInteger instances = new AtomicInteger();
+    private static final String PROCESS_KEY = Long.toString(new Random().nextLong() & Long.MAX_VALUE, Character.MAX_RADIX);
+    private static final AtomicBoolean staleFencesRemoved = new AtomicBoolean();
+
+    private final Context context;
+    private final AwarenessTransport transport;
+    private final Set<SnapshotType> types;
+    private final double locationRadiusMeters;
+    private final Map<SnapshotType, Object> values = new EnumMap<>(SnapshotType.class);
+    private final Map<SnapshotType, Long> generations = new EnumMap<>(SnapshotType.class);
+    private final Set<SnapshotType> registered = EnumSet.noneOf(SnapshotType.class);
+    private final int id = instances.incrementAndGet();
+
+    private Function<SnapshotType, Single<?>> refresher;
+    private PendingIntent pendingIntent;
+    private TriggerReceiver receiver;
+    private boolean released;
+
+    ChangeTriggeredCache(Context context, AwarenessTransport transport, Set<SnapshotType> types, double locationRadiusMeters) {
+        this.context = context;
+        this.transport = transport;
+        this.types = EnumSet.noneOf(SnapshotType.class);
+        this.types.addAll(types);
+        this.locationRadiusMeters = locationRadiusMeters;
+        for (SnapshotType type : SnapshotType.values()) {
+            generations.put(type, 0L);
+        }
+    }
+
+    /**
+     * @param refresher creates the request used to refresh a value in the background after its
+     *                  fence triggered
+     */
+    void setRefresher(Function<SnapshotType, Single<?>> refresher) {
+        this.refresher = refresher;
+    }
+
+    /**
+     * Serves the cached value of the given type, if available. Otherwise the given request is
+     * executed and its value cached once the fence for it was registered.
+     *
+     * @param type    type of the snapshot
+     * @param request request to execute when no value is cached
+     * @return Single of the cached value or the result of the request
+     */
+    @SuppressWarnings("unchecked")
+    <T> Single<T> serve(SnapshotType type, Single<T> request) {
+        if (!types.contains(type)) {
+            return request;
+        }
+
+        return Single.defer(() -> {
+            long generation;
+            synchronized (this) {
+                if (released) {
+                    return request;
+                }
+                T cached = (T) values.get(type);
+                if (cached != null) {
+                    return Single.just(cached);
+                }
+                generation = generations.get(type);
+            }
+            return request.doOnSuccess(value -> watch(type, value, generation));
+        });
+    }
+
+    /**
+     * Registers the fence for the given value and caches it once the fence was registered.
+     */
+    @SuppressWarnings("MissingPermission")
+    private void watch(SnapshotType type, Object value, long generation) {
+        AwarenessFence fence = createFence(type, value);
+        if (fence == null) {
+            return;
+        }
+
+        PendingIntent pendingIntent = getPendingIntent();
+        if (pendingIntent == null) {
+            return;
+        }
+
+        FenceUpdateRequest request = new FenceUpdateRequest.Builder()
+                .addFence(getFenceKey(type), fence, pendingIntent)
+                .build();
+
+        transport.connect(context)
+                .flatMap(connection -> removeStaleFences(connection)
+                        .flatMap(removed -> connection.updateFences(request))
+                        .doOnEvent((status, throwable) -> connection.disconnect())
+                        .doOnDispose(connection::disconnect))
+                .subscribe(
+                        status -> {
+                            if (status.isSuccess() && !put(type, value, generation)) {
+                                // released while the fence was registered
+                                removeFences(EnumSet.of(type));
+                            }
+                        },
+                        throwable -> {
+                            // without a fence the value is not cached and requested again
+                        }
+                );
+    }
+
+    /**
+     * Removes the internal fences registered by other processes, once per process.
+     *
+     * @return Single that emits {@code true} once the stale fences were removed, {@code false}
+     * if removing them failed. Registering the fence continues either way.
+     */
+    private static Single<Boolean> removeStaleFences(AwarenessConnection connection) {
+        if (!staleFencesRemoved.compareAndSet(false, true)) {
+            return Single.just(true);
+        }
+
+        return connection.queryFences(FenceQueryRequest.all())
+                .flatMap(result -> {
+                    FenceUpdateRequest request = createStaleFencesRequest(result);
+                    if (request == null) {
+                        return Single.just(result.getStatus().isSuccess());
+                    }
+                    return connection.updateFences(request).map(Status::isSuccess);
+                })
+                .onErrorReturn(throwable -> false)
+                .doOnSuccess(removed -> {
+                    if (!removed) {
+                        // tried again with the next fence
+                        staleFencesRemoved.set(false);
+                    }
+                });
+    }
+
+    /**
+     * @return request removing the internal fences of other processes, {@code null} if there are
+     * none or the query failed
+     */
+    @Nullable
+    private static FenceUpdateRequest createStaleFencesRequest(FenceQueryResult result) {
+        if (!result.getStatus().isSuccess()) {
+            return null;
+        }
+
+        String processPrefix = FENCE_KEY_PREFIX + PROCESS_KEY + "_";
+        List<String> stale = new ArrayList<>();
+        for (String key : result.getFenceStateMap().getFenceKeys()) {
+            if (key.startsWith(FENCE_KEY_PREFIX) && !key.startsWith(processPrefix)) {
+                stale.add(key);
+            }
+        }
+        if (stale.isEmpty()) {
+            return null;
+        }
+
+        FenceUpdateRequest.Builder builder = new FenceUpdateRequest.Builder();
+        for (String key : stale) {
+            builder.removeFence(key);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return {@code false} if the cache was released in the meantime
+     */
+    private synchronized boolean put(SnapshotType type, Object value, long generation) {
+        if (released) {
+            return false;
+        }
+        registered.add(type);
+        if (generations.get(type) == generation) {
+            values.put(type, value);
+        }
+        return true;
+    }
+
+    /**
+     * @return location cached until the device leaves the change radius around it, {@code null}
+     * if no location is cached
+     */
+    @Nullable
+    synchronized Location getLocation() {
+        return (Location) values.get(SnapshotType.LOCATION);
+    }
+
+    /**
+     * Removes the internal fences and stops listening for them. Afterwards requests are not
+     * cached anymore.
+     */
+    void release() {
+        Set<SnapshotType> fences;
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+            values.clear();
+            for (SnapshotType type : SnapshotType.values()) {
+                generations.put(type, generations.get(type) + 1);
+            }
+            fences = EnumSet.noneOf(SnapshotType.class);
+            fences.addAll(registered);
+            registered.clear();
+
+            if (receiver != null) {
+                context.unregisterReceiver(receiver);
+                receiver = null;
+            }
+        }
+
+        removeFences(fences);
+    }
+
+    private void removeFences(Set<SnapshotType> fences) {
+        if (fences.isEmpty()) {
+            return;
+        }
+
+        FenceUpdateRequest.Builder builder = new FenceUpdateRequest.Builder();
+        for (SnapshotType type : fences) {
+            builder.removeFence(getFenceKey(type));
+        }
+        FenceUpdateRequest request = builder.build();
+
+        transport.connect(context)
+                .flatMap(connection -> connection.updateFences(request)
+                        .doOnEvent((status, throwable) -> connection.disconnect())
+                        .doOnDispose(connection::disconnect))
+                .subscribe(
+                        status -> {
+                        },
+                        throwable -> {
+                            // triggers of remaining fences are not received anymore
+                        }
+                );
+    }
+
+    /**
+     * Invalidates the value of the given type and refreshes it in the background.
+     *
+     * @param type type whose value changed
+     */
+    void onChanged(SnapshotType type) {
+        synchronized (this) {
+            values.remove(type);
+            generations.put(type, generations.get(type) + 1);
+        }
+
+        Function<SnapshotType, Single<?>> refresher = this.refresher;
+        if (refresher == null) {
+            return;
+        }
+
+        try {
+            Single<?> request = refresher.apply(type);
+            if (request == null) {
+                return;
+            }
+            serve(type, request).subscribe(
+                    value -> {
+                    },
+                    throwable -> {
+                        // the value is requested again by the next request of its type
+                    });
+        } catch (Exception e) {
+            // the value is requested again by the next request of its type
+        }
+    }
+
+    @Nullable
+    private AwarenessFence createFence(SnapshotType type, Object value) {
+        switch (type) {
+            case LOCATION:
+                Location location = (Location) value;
+                return LocationFence.exiting(location.getLatitude(), location.getLongitude(), locationRadiusMeters);
+            case ACTIVITY:
+                ActivityRecognitionResult activity = (ActivityRecognitionResult) value;
+                int activityType = activity.getMostProbableActivity().getType();
+                return isFenceable(activityType) ? DetectedActivityFence.stopping(activityType) : null;
+            case HEADPHONES:
+                return (Boolean) value ? HeadphoneFence.unplugging() : HeadphoneFence.pluggingIn();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return {@code true} if stopping the given activity type can be fenced
+     */
+    private static boolean isFenceable(int activityType) {
+        switch (activityType) {
+            case DetectedActivity.IN_VEHICLE:
+            case DetectedActivity.ON_BICYCLE:
+            case DetectedActivity.ON_FOOT:
+            case DetectedActivity.STILL:
+            case DetectedActivity.WALKING:
+            case DetectedActivity.RUNNING:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private String getFenceKey(SnapshotType type) {
+        return FENCE_KEY_PREFIX + PROCESS_KEY + "_" + id + "_" + type.name();
+    }
+
+    /**
+     * @return PendingIntent for the internal fences, {@code null} if the cache was released
+     */
+    @Nullable
+    private synchronized PendingIntent getPendingIntent() {
+        if (released) {
+            return null;
+        }
+        if (receiver == null) {
+            String action = context.getPackageName() + ACTION_SUFFIX + id;
+            receiver = new TriggerReceiver();
+            context.registerReceiver(receiver, new IntentFilter(action), null, AwarenessCallbackLooper.getHandler());
+            if (pendingIntent == null) {
+                pendingIntent = PendingIntent.getBroadcast(context, id, new Intent(action).setPackage(context.getPackageName()), PendingIntent.FLAG_UPDATE_CURRENT);
+            }
+        }
+        return pendingIntent;
+    }
+
+    /**
+     * Receives the triggers of the internal fences.
+     */
+    private class TriggerReceiver extends BroadcastReceiver {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            FenceState state = FenceState.extract(intent);
+            String key = state.getFenceKey();
+            if (key == null || !key.startsWith(FENCE_KEY_PREFIX) || state.getCurrentState() != FenceState.TRUE) {
+                return;
+            }
+
+            for (SnapshotType type : types) {
+                if (key.equals(getFenceKey(type))) {
+                    onChanged(type);
+                    return;
+                }
+            }
+        }
+    }
+}
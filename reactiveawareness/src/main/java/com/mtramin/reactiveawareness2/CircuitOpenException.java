@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+/**
+ * Exception thrown when requests of a {@link SnapshotType} are not executed as the Awareness API
+ * failed repeatedly for this type and no cached value is available.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    private final SnapshotType type;
+
+    public CircuitOpenException(SnapshotType type) {
+        super("Requests for " + type + " are suspended after repeated failures");
+        this.type = type;
+    }
+
+    /**
+     * @return type of the snapshot that was requested
+     */
+    public SnapshotType getType() {
+        return type;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.location.Location;
+
+import com.google.android.gms.awareness.state.HeadphoneState;
+import com.google.android.gms.awareness.state.Weather;
+import com.google.android.gms.location.ActivityRecognitionResult;
+import com.google.android.gms.location.DetectedActivity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.functions.Predicate;
+
+/**
+ * A boolean rule over the users context, e.g. "walking and headphones plugged in and raining".
+ * <p>
+ * Rules are built like {@link com.google.android.gms.awareness.fence.AwarenessFence}s, but are
+ * evaluated locally by a {@link ContextRuleEngine} on the values of the snapshot streams instead of
+ * being registered with the Awareness API. Rules are immutable and can be shared and reused.
+ */
+public abstract class ContextRule {
+
+    ContextRule() {
+    }
+
+    /**
+     * @param activityTypes {@link DetectedActivity} types to check for
+     * @return rule that is true while the most probable activity is one of the given types
+     */
+    public static ContextRule activity(int... activityTypes) {
+        int[] types = activityTypes.clone();
+        return new Condition<ActivityRecognitionResult>(SnapshotType.ACTIVITY, result -> {
+            int type = result.getMostProbableActivity().getType();
+            for (int activityType : types) {
+                if (activityType == type) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * @param activityType      {@link DetectedActivity} type to check for
+     * @param minimumConfidence minimum confidence of the activity between 0 and 100
+     * @return rule that is true while the given activity is detected with at least the given
+     * confidence
+     */
+    public static ContextRule activity(int activityType, int minimumConfidence) {
+        return new Condition<ActivityRecognitionResult>(SnapshotType.ACTIVITY,
+                result -> result.getActivityConfidence(activityType) >= minimumConfidence);
+    }
+
+    /**
+     * @param headphoneState {@link HeadphoneState#PLUGGED_IN} or {@link HeadphoneState#UNPLUGGED}
+     * @return rule that is true while the headphones are in the given state
+     */
+    public static ContextRule headphones(int headphoneState) {
+        boolean pluggedIn = headphoneState == HeadphoneState.PLUGGED_IN;
+        return new Condition<Boolean>(SnapshotType.HEADPHONES, state -> state == pluggedIn);
+    }
+
+    /**
+     * @param conditions weather conditions to check for, e.g. {@link Weather#CONDITION_RAINY}
+     * @return rule that is true while any of the given weather conditions applies
+     */
+    public static ContextRule weather(int... conditions) {
+        int[] expected = conditions.clone();
+        return new Condition<Weather>(SnapshotType.WEATHER, weather -> {
+            for (int condition : weather.getConditions()) {
+                for (int expectedCondition : expected) {
+                    if (condition == expectedCondition) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * @param temperatureUnit {@link Weather#CELSIUS} or {@link Weather#FAHRENHEIT}
+     * @param minTemperature  minimum temperature, inclusive
+     * @param maxTemperature  maximum temperature, inclusive
+     * @return rule that is true while the temperature is within the given range
+     */
+    public static ContextRule temperature(int temperatureUnit, float minTemperature, float maxTemperature) {
+        return new Condition<Weather>(SnapshotType.WEATHER, weather -> {
+            float temperature = weather.getTemperature(temperatureUnit);
+            return temperature >= minTemperature && temperature <= maxTemperature;
+        });
+    }
+
+    /**
+     * @param latitude     latitude of the center of the region
+     * @param longitude    longitude of the center of the region
+     * @param radiusMeters radius of the region in meters
+     * @return rule that is true while the device is within the given circular region
+     */
+    public static ContextRule location(double latitude, double longitude, double radiusMeters) {
+        return new Condition<Location>(SnapshotType.LOCATION, location -> {
+            float[] distance = new float[1];
+            Location.distanceBetween(latitude, longitude, location.getLatitude(), location.getLongitude(), distance);
+            return distance[0] <= radiusMeters;
+        });
+    }
+
+    /**
+     * @param rules rules to combine
+     * @return rule that is true while all of the given rules are true
+     */
+    public static ContextRule and(ContextRule... rules) {
+        return and(Arrays.asList(rules));
+    }
+
+    /**
+     * @param rules rules to combine
+     * @return rule that is true while all of the given rules are true
+     */
+    public static ContextRule and(Collection<ContextRule> rules) {
+        return new Combination(true, rules);
+    }
+
+    /**
+     * @param rules rules to combine
+     * @return rule that is true while any of the given rules is true
+     */
+    public static ContextRule or(ContextRule... rules) {
+        return or(Arrays.asList(rules));
+    }
+
+    /**
+     * @param rules rules to combine
+     * @return rule that is true while any of the given rules is true
+     */
+    public static ContextRule or(Collection<ContextRule> rules) {
+        return new Combination(false, rules);
+    }
+
+    /**
+     * @param rule rule to negate
+     * @return rule that is true while the given rule is false
+     */
+    public static ContextRule not(ContextRule rule) {
+        return new Negation(rule);
+    }
+
+    /**
+     * Creates the node evaluating this rule
+     *
+     * @param evaluator evaluator the rule is compiled for
+     * @return node evaluating this rule
+     */
+    abstract RuleEvaluator.Node compile(RuleEvaluator evaluator);
+
+    /**
+     * Rule checking a single value of a snapshot stream.
+     */
+    private static class Condition<T> extends ContextRule {
+
+        private final SnapshotType type;
+        private final Predicate<T> predicate;
+
+        private Condition(SnapshotType type, Predicate<T> predicate) {
+            this.type = type;
+            this.predicate = predicate;
+        }
+
+        @Override
+        RuleEvaluator.Node compile(RuleEvaluator evaluator) {
+            return evaluator.condition(type, predicate);
+        }
+    }
+
+    /**
+     * Rule combining other rules with AND or OR.
+     */
+    private static class Combination extends ContextRule {
+
+        private final boolean and;
+        private final List<ContextRule> rules;
+
+        private Combination(boolean and, Collection<ContextRule> rules) {
+            if (rules.isEmpty()) {
+                throw new IllegalArgumentException("At least one rule has to be combined");
+            }
+            this.and = and;
+            this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        }
+
+        @Override
+        RuleEvaluator.Node compile(RuleEvaluator evaluator) {
+            List<RuleEvaluator.Node> children = new ArrayList<>(rules.size());
+            for (ContextRule rule : rules) {
+                children.add(rule.compile(evaluator));
+            }
+            return evaluator.combination(and, children);
+        }
+    }
+
+    /**
+     * Rule negating another rule.
+     */
+    private static class Negation extends ContextRule {
+
+        private final ContextRule rule;
+
+        private Negation(ContextRule rule) {
+            this.rule = rule;
+        }
+
+        @Override
+        RuleEvaluator.Node compile(RuleEvaluator evaluator) {
+            return evaluator.negation(rule.compile(evaluator));
+        }
+    }
+}
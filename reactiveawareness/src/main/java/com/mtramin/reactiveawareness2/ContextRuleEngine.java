@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.location.Location;
+
+import com.google.android.gms.awareness.state.Weather;
+import com.google.android.gms.location.ActivityRecognitionResult;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+
+/**
+ * Evaluates {@link ContextRule}s locally on streams of snapshot values.
+ * <p>
+ * Other than fences, rules don't have to be registered with the Awareness API, which makes them
+ * cheap for short-lived rules over values that are streamed anyway. Rules are evaluated
+ * incrementally: a new value only re-evaluates the parts of the rule depending on it.
+ * <p>
+ * The streams can either be provided through the {@link Builder} or be created by polling a
+ * {@link ReactiveSnapshot} with {@link #create(ReactiveSnapshot, long, TimeUnit)}.
+ */
+public class ContextRuleEngine {
+
+    private final Map<SnapshotType, Observable<?>> sources;
+
+    private ContextRuleEngine(Builder builder) {
+        this.sources = new EnumMap<>(builder.sources);
+    }
+
+    /**
+     * Creates a rule engine whose snapshot streams poll the given ReactiveSnapshot in the given
+     * interval with {@link RequestPriority#BACKGROUND}. Only the snapshots needed by the observed
+     * rules are polled. Polls that failed transiently, e.g. due to a timeout or network error,
+     * are skipped, other failures like a missing permission or API key are emitted as errors.
+     * <p>
+     * Observing rules on activities requires the ACTIVITY_RECOGNITION permission, rules on weather
+     * or location require the ACCESS_FINE_LOCATION permission.
+     *
+     * @param snapshot ReactiveSnapshot to poll
+     * @param interval interval in which the snapshots are polled
+     * @param unit     unit of the interval
+     * @return rule engine polling the given ReactiveSnapshot
+     */
+    @SuppressWarnings("MissingPermission")
+    public static ContextRuleEngine create(ReactiveSnapshot snapshot, long interval, TimeUnit unit) {
+        ReactiveSnapshot background = snapshot.withPriority(RequestPriority.BACKGROUND);
+
+        // changes of the local headphone state are pushed, so they don't need to be polled
+        Observable<Boolean> headphones = background.isHeadphoneStateLocal()
+                ? background.observeHeadphones().replay(1).refCount()
+                : poll(background::headphonesPluggedIn, interval, unit);
+
+        return new Builder()
+                .setActivitySource(poll(background::getActivity, interval, unit))
+                .setHeadphoneSource(headphones)
+                .setWeatherSource(poll(background::getWeather, interval, unit))
+                .setLocationSource(poll(background::getLocation, interval, unit))
+                .build();
+    }
+
+    private static <T> Observable<T> poll(Callable<Single<T>> request, long interval, TimeUnit unit) {
+        return Observable.interval(0, interval, unit)
+                .concatMap(tick -> request.call()
+                        .toObservable()
+                        .onErrorResumeNext((Throwable throwable) -> RetryPolicy.isTransient(throwable)
+                                ? Observable.<T>empty()
+                                : Observable.<T>error(throwable)))
+                .replay(1)
+                .refCount();
+    }
+
+    /**
+     * Observes the given rule. Once enough values have been received to decide the rule, its
+     * state is emitted, afterwards every change of its state is emitted.
+     *
+     * @param rule rule to observe
+     * @return Observable of the rules state
+     * @throws IllegalStateException if no stream is available for a value the rule depends on
+     */
+    public Observable<Boolean> observe(ContextRule rule) {
+        return Observable.defer(() -> {
+            RuleEvaluator evaluator = new RuleEvaluator(rule);
+
+            List<Observable<Update>> updates = new ArrayList<>();
+            for (SnapshotType type : evaluator.getTypes()) {
+                Observable<?> source = sources.get(type);
+                if (source == null) {
+                    return Observable.error(new IllegalStateException("No source for " + type + " values configured"));
+                }
+                updates.add(source.map(value -> new Update(type, value)));
+            }
+
+            return Observable.merge(updates)
+                    .map(update -> evaluator.update(update.type, update.value))
+                    .filter(state -> state != RuleEvaluator.UNKNOWN)
+                    .map(state -> state == RuleEvaluator.TRUE)
+                    .distinctUntilChanged();
+        });
+    }
+
+    private static class Update {
+        final SnapshotType type;
+        final Object value;
+
+        private Update(SnapshotType type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Builder for {@link ContextRuleEngine}s on custom snapshot streams. Streams shared between
+     * several observed rules should be multicast, e.g. with {@code replay(1).refCount()}.
+     */
+    public static class Builder {
+
+        private final Map<SnapshotType, Observable<?>> sources = new EnumMap<>(SnapshotType.class);
+
+        /**
+         * @param source stream of the detected activities
+         * @return this builder
+         */
+        public Builder setActivitySource(Observable<ActivityRecognitionResult> source) {
+            sources.put(SnapshotType.ACTIVITY, source);
+            return this;
+        }
+
+        /**
+         * @param source stream of {@code true} if the headphones are plugged in
+         * @return this builder
+         */
+        public Builder setHeadphoneSource(Observable<Boolean> source) {
+            sources.put(SnapshotType.HEADPHONES, source);
+            return this;
+        }
+
+        /**
+         * @param source stream of the weather at the current location
+         * @return this builder
+         */
+        public Builder setWeatherSource(Observable<Weather> source) {
+            sources.put(SnapshotType.WEATHER, source);
+            return this;
+        }
+
+        /**
+         * @param source stream of the current location
+         * @return this builder
+         */
+        public Builder setLocationSource(Observable<Location> source) {
+            sources.put(SnapshotType.LOCATION, source);
+            return this;
+        }
+
+        /**
+         * @return the configured ContextRuleEngine
+         */
+        public ContextRuleEngine build() {
+            return new ContextRuleEngine(this);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.content.Context;
+
+import com.google.android.gms.awareness.fence.FenceQueryRequest;
+import com.google.android.gms.awareness.fence.FenceQueryResult;
+import com.google.android.gms.awareness.fence.FenceUpdateRequest;
+import com.google.android.gms.awareness.snapshot.BeaconStateResult;
+import com.google.android.gms.awareness.snapshot.DetectedActivityResult;
+import com.google.android.gms.awareness.snapshot.HeadphoneStateResult;
+import com.google.android.gms.awareness.snapshot.LocationResult;
+import com.google.android.gms.awareness.snapshot.PlacesResult;
+import com.google.android.gms.awareness.snapshot.WeatherResult;
+import com.google.android.gms.awareness.state.BeaconState;
+import com.google.android.gms.common.api.Status;
+import com.mtramin.servant2.ClientException;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * In-memory {@link AwarenessTransport} that answers all requests with preconfigured results.
+ * <p>
+ * Latency for connecting and for every request as well as random errors can be injected to test
+ * the behaviour of the reactive pipeline without a device or Google Play Services, e.g. for
+ * throughput and latency tests running on the JVM.
+ * <p>
+ * Requests for which no result has been configured will fail with an
+ * {@link IllegalStateException}.
+ */
+public class FakeAwarenessTransport implements AwarenessTransport {
+
+    private final Scheduler scheduler;
+    private final Random random = new Random();
+
+    private final AtomicInteger connectCount = new AtomicInteger();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger openConnectionCount = new AtomicInteger();
+
+    private volatile long connectLatencyMillis;
+    private volatile long requestLatencyMillis;
+    private volatile double errorRate;
+    private volatile Throwable error = new ClientException("Error injected by FakeAwarenessTransport");
+
+    private volatile DetectedActivityResult detectedActivityResult;
+    private volatile BeaconStateResult beaconStateResult;
+    private volatile HeadphoneStateResult headphoneStateResult;
+    private volatile LocationResult locationResult;
+    private volatile PlacesResult placesResult;
+    private volatile WeatherResult weatherResult;
+    private volatile Status fenceUpdateStatus;
+    private volatile FenceQueryResult fenceQueryResult;
+
+    /**
+     * Creates a new fake transport that delays its responses on the computation scheduler.
+     */
+    public FakeAwarenessTransport() {
+        this(Schedulers.computation());
+    }
+
+    /**
+     * Creates a new fake transport
+     *
+     * @param scheduler scheduler used to delay responses when latency is configured
+     */
+    public FakeAwarenessTransport(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param latency time it takes to connect
+     * @param unit    unit of the latency
+     * @return this transport
+     */
+    public FakeAwarenessTransport setConnectLatency(long latency, TimeUnit unit) {
+        this.connectLatencyMillis = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * @param latency time it takes for every request to deliver its result
+     * @param unit    unit of the latency
+     * @return this transport
+     */
+    public FakeAwarenessTransport setRequestLatency(long latency, TimeUnit unit) {
+        this.requestLatencyMillis = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * Injects errors into connections and requests.
+     *
+     * @param errorRate probability between {@code 0} and {@code 1} that a connection or request fails
+     * @param error     error to deliver on failure
+     * @return this transport
+     */
+    public FakeAwarenessTransport setErrorRate(double errorRate, Throwable error) {
+        this.errorRate = errorRate;
+        this.error = error;
+        return this;
+    }
+
+    public FakeAwarenessTransport setDetectedActivityResult(DetectedActivityResult result) {
+        this.detectedActivityResult = result;
+        return this;
+    }
+
+    public FakeAwarenessTransport setBeaconStateResult(BeaconStateResult result) {
+        this.beaconStateResult = result;
+        return this;
+    }
+
+    public FakeAwarenessTransport setHeadphoneStateResult(HeadphoneStateResult result) {
+        this.headphoneStateResult = result;
+        return this;
+    }
+
+    public FakeAwarenessTransport setLocationResult(LocationResult result) {
+        this.locationResult = result;
+        return this;
+    }
+
+    public FakeAwarenessTransport setPlacesResult(PlacesResult result) {
+        this.placesResult = result;
+        return this;
+    }
+
+    public FakeAwarenessTransport setWeatherResult(WeatherResult result) {
+        this.weatherResult = result;
+        return this;
+    }
+
+    public FakeAwarenessTransport setFenceUpdateStatus(Status status) {
+        this.fenceUpdateStatus = status;
+        return this;
+    }
+
+    public FakeAwarenessTransport setFenceQueryResult(FenceQueryResult result) {
+        this.fenceQueryResult = result;
+        return this;
+    }
+
+    /**
+     * @return number of connections that have been established
+     */
+    public int getConnectCount() {
+        return connectCount.get();
+    }
+
+    /**
+     * @return number of requests that have been answered
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return number of connections that have not been disconnected yet
+     */
+    public int getOpenConnectionCount() {
+        return openConnectionCount.get();
+    }
+
+    @Override
+    public Single<AwarenessConnection> connect(Context context) {
+        return respond(connectLatencyMillis, "connection", () -> {
+            connectCount.incrementAndGet();
+            openConnectionCount.incrementAndGet();
+            return new FakeConnection();
+        });
+    }
+
+    private <T> Single<T> respond(long latencyMillis, String name, Callable<T> response) {
+        Single<T> result = Single.defer(() -> {
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                return Single.error(error);
+            }
+
+            T value = response.call();
+            if (value == null) {
+                return Single.error(new IllegalStateException("No " + name + " configured in FakeAwarenessTransport"));
+            }
+            return Single.just(value);
+        });
+
+        if (latencyMillis <= 0) {
+            return result;
+        }
+
+        return Single.timer(latencyMillis, TimeUnit.MILLISECONDS, scheduler)
+                .flatMap(ignored -> result);
+    }
+
+    private <R> Single<R> request(String name, Callable<R> response) {
+        return respond(requestLatencyMillis, name, () -> {
+            requestCount.incrementAndGet();
+            return response.call();
+        });
+    }
+
+    private class FakeConnection implements AwarenessConnection {
+
+        private final AtomicBoolean connected = new AtomicBoolean(true);
+
+        @Override
+        public Single<DetectedActivityResult> getDetectedActivity() {
+            return request("DetectedActivityResult", () -> detectedActivityResult);
+        }
+
+        @Override
+        public Single<BeaconStateResult> getBeaconState(Collection<BeaconState.TypeFilter> typeFilters) {
+            return request("BeaconStateResult", () -> beaconStateResult);
+        }
+
+        @Override
+        public Single<HeadphoneStateResult> getHeadphoneState() {
+            return request("HeadphoneStateResult", () -> headphoneStateResult);
+        }
+
+        @Override
+        public Single<LocationResult> getLocation() {
+            return request("LocationResult", () -> locationResult);
+        }
+
+        @Override
+        public Single<PlacesResult> getPlaces() {
+            return request("PlacesResult", () -> placesResult);
+        }
+
+        @Override
+        public Single<WeatherResult> getWeather() {
+            return request("WeatherResult", () -> weatherResult);
+        }
+
+        @Override
+        public Single<Status> updateFences(FenceUpdateRequest request) {
+            return request("fence update Status", () -> fenceUpdateStatus);
+        }
+
+        @Override
+        public Single<FenceQueryResult> queryFences(FenceQueryRequest request) {
+            return request("FenceQueryResult", () -> fenceQueryResult);
+        }
+
+        @Override
+        public void disconnect() {
+            if (connected.compareAndSet(true, false)) {
+                openConnectionCount.decrementAndGet();
+            }
+        }
+    }
+}
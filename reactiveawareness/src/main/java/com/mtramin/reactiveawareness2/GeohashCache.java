@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.location.Location;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Single;
+
+/**
+ * Caches location dependent snapshots ({@link SnapshotType#WEATHER} and
+ * {@link SnapshotType#PLACES}) by the geohash cell they were taken in.
+ * <p>
+ * Requests are answered from the cache if the current location is known and a value that is not
+ * older than the max age was received in the same cell. The current location is the location
+ * received last, as long as it is not older than a minute. Locations served by the
+ * {@link ChangeTriggeredCache} don't refresh that age, so otherwise the location cached until
+ * changed is used, which is valid until the device leaves the change radius around it. Entries are evicted least recently
+ * used first once the estimated memory of all entries exceeds the configured maximum.
+ * <p>
+ * A precision of {@code 0} disables the cache.
+ */
+class GeohashCache {
+
+    // location younger than this is considered to be the current location of the device
+    private static final long LOCATION_MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // rough estimates of the retained memory of the cached values
+    private static final int WEATHER_BYTES = 256;
+    private static final int PLACE_BYTES = 1024;
+    private static final int ENTRY_BYTES = 128;
+
+    private final SnapshotCache lastValues;
+    private final ChangeTriggeredCache changeTriggered;
+    private final int precision;
+    private final long maxAgeNanos;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    /**
+     * @param lastValues      cache holding the last received location
+     * @param changeTriggered cache holding the location cached until changed
+     * @param precision       number of characters of the geohash cells
+     * @param maxAge          time for which cached values are used
+     * @param unit            unit of the max age
+     * @param maxBytes        estimated memory all entries may retain
+     */
+    GeohashCache(SnapshotCache lastValues, ChangeTriggeredCache changeTriggered, int precision, long maxAge, TimeUnit unit, long maxBytes) {
+        this.lastValues = lastValues;
+        this.changeTriggered = changeTriggered;
+        this.precision = precision;
+        this.maxAgeNanos = unit.toNanos(maxAge);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Serves the value cached for the cell of the last known location, if available. Otherwise
+     * the given request is executed and its value cached for the cell of the last known location.
+     *
+     * @param type    type of the snapshot
+     * @param request request to execute when no value is cached
+     * @return Single of the cached value or the result of the request
+     */
+    @SuppressWarnings("unchecked")
+    <T> Single<T> serve(SnapshotType type, Single<T> request) {
+        if (precision <= 0 || (type != SnapshotType.WEATHER && type != SnapshotType.PLACES)) {
+            return request;
+        }
+
+        return Single.defer(() -> {
+            String key = currentKey(type);
+            if (key != null) {
+                Object cached = get(key);
+                if (cached != null) {
+                    return Single.just((T) cached);
+                }
+            }
+
+            return request.doOnSuccess(value -> {
+                // the device might have moved while the request was running
+                String storeKey = currentKey(type);
+                if (storeKey != null) {
+                    put(storeKey, value, estimateBytes(type, value));
+                }
+            });
+        });
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private String currentKey(SnapshotType type) {
+        Location location = currentLocation();
+        if (location == null) {
+            return null;
+        }
+        return type.name() + ':' + Geohash.encode(location.getLatitude(), location.getLongitude(), precision);
+    }
+
+    /**
+     * @return the current location of the device, {@code null} if it is unknown
+     */
+    private Location currentLocation() {
+        // every received location passes the SnapshotCache, so a recent entry is never older
+        // than the location cached until changed
+        SnapshotCache.Entry received = lastValues.get(SnapshotType.LOCATION);
+        if (received != null && System.nanoTime() - received.receivedAt <= LOCATION_MAX_AGE_NANOS) {
+            return (Location) received.value;
+        }
+        return changeTriggered.getLocation();
+    }
+
+    private synchronized Object get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (System.nanoTime() - entry.storedAt > maxAgeNanos) {
+            remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private synchronized void put(String key, Object value, int size) {
+        remove(key);
+        entries.put(key, new Entry(value, System.nanoTime(), size));
+        bytes += size;
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            bytes -= eldest.size;
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.size;
+        }
+    }
+
+    private static int estimateBytes(SnapshotType type, Object value) {
+        if (type == SnapshotType.PLACES && value instanceof List) {
+            return ENTRY_BYTES + PLACE_BYTES * ((List<?>) value).size();
+        }
+        return ENTRY_BYTES + WEATHER_BYTES;
+    }
+
+    private static class Entry {
+        final Object value;
+        final long storedAt;
+        final int size;
+
+        private Entry(Object value, long storedAt, int size) {
+            this.value = value;
+            this.storedAt = storedAt;
+            this.size = size;
+        }
+    }
+}
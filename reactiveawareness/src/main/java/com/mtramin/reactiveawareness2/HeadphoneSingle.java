@@ -18,11 +18,8 @@ package com.mtramin.reactiveawareness2;
 
 import android.content.Context;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.snapshot.HeadphoneStateResult;
 import com.google.android.gms.awareness.state.HeadphoneState;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
 
 import io.reactivex.Single;
 
@@ -31,17 +28,17 @@ import io.reactivex.Single;
  */
 class HeadphoneSingle extends BaseAwarenessSingle<Boolean, HeadphoneStateResult> {
 
-    private HeadphoneSingle(Context context) {
-        super(context);
+    private HeadphoneSingle(Context context, AwarenessTransport transport, long timeoutMillis) {
+        super(context, transport, SnapshotType.HEADPHONES, timeoutMillis);
     }
 
-    public static Single<Boolean> create(Context context) {
-        return Single.create(new HeadphoneSingle(context));
+    public static Single<Boolean> create(Context context, AwarenessTransport transport, long timeoutMillis) {
+        return Single.create(new HeadphoneSingle(context, transport, timeoutMillis));
     }
 
     @Override
-    protected PendingResult<HeadphoneStateResult> createRequest(GoogleApiClient googleApiClient) {
-        return Awareness.SnapshotApi.getHeadphoneState(googleApiClient);
+    protected Single<HeadphoneStateResult> createRequest(AwarenessConnection connection) {
+        return connection.getHeadphoneState();
     }
 
     @Override
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import io.reactivex.Observable;
+
+/**
+ * Reads the headphone state locally from the {@link AudioManager} and the sticky
+ * {@link Intent#ACTION_HEADSET_PLUG} broadcast instead of asking the Awareness API.
+ */
+class LocalHeadphoneState {
+
+    private static final String EXTRA_STATE = "state";
+
+    // AudioDeviceInfo.TYPE_USB_HEADSET, only defined from API 26 on
+    private static final int TYPE_USB_HEADSET = 22;
+
+    private LocalHeadphoneState() {
+    }
+
+    /**
+     * @param context context to use
+     * @return {@code true} if the headphone state can be read locally
+     */
+    static boolean isAvailable(Context context) {
+        return getAudioManager(context) != null;
+    }
+
+    /**
+     * @param context context to use
+     * @return {@code true} if headphones are currently plugged in
+     */
+    @SuppressWarnings("deprecation")
+    static boolean read(Context context) {
+        AudioManager audioManager = getAudioManager(context);
+
+        if (audioManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return hasHeadphoneOutput(audioManager);
+        }
+
+        Intent sticky = context.registerReceiver(null, new IntentFilter(Intent.ACTION_HEADSET_PLUG));
+        if (sticky != null) {
+            return isPluggedIn(sticky);
+        }
+
+        return audioManager != null && audioManager.isWiredHeadsetOn();
+    }
+
+    /**
+     * Observes the headphone state through the {@link Intent#ACTION_HEADSET_PLUG} broadcast. The
+     * current state is emitted right away from the sticky broadcast, afterwards only changes are
+     * emitted on the {@link AwarenessCallbackLooper}.
+     *
+     * @param context context to use
+     * @return Observable of the headphone state
+     */
+    static Observable<Boolean> observe(Context context) {
+        return Observable.<Boolean>create(emitter -> {
+            BroadcastReceiver receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    emitter.onNext(isPluggedIn(intent));
+                }
+            };
+
+            Intent sticky = context.registerReceiver(receiver, new IntentFilter(Intent.ACTION_HEADSET_PLUG), null, AwarenessCallbackLooper.getHandler());
+            if (sticky == null) {
+                // no headset was plugged in since boot, so there is no sticky broadcast
+                emitter.onNext(read(context));
+            }
+
+            emitter.setCancellable(() -> context.unregisterReceiver(receiver));
+        }).distinctUntilChanged();
+    }
+
+    private static boolean isPluggedIn(Intent intent) {
+        return intent.getIntExtra(EXTRA_STATE, 0) == 1;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.M)
+    private static boolean hasHeadphoneOutput(AudioManager audioManager) {
+        AudioDeviceInfo[] devices = audioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS);
+        if (devices == null) {
+            return false;
+        }
+
+        for (AudioDeviceInfo device : devices) {
+            int type = device.getType();
+            if (type == AudioDeviceInfo.TYPE_WIRED_HEADSET
+                    || type == AudioDeviceInfo.TYPE_WIRED_HEADPHONES
+                    || type == TYPE_USB_HEADSET) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static AudioManager getAudioManager(Context context) {
+        return (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    }
+}
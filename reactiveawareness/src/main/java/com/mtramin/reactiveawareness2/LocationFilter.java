@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.location.Location;
+
+/**
+ * Smooths a stream of location fixes.
+ * <p>
+ * Fixes that are less accurate than the maximum accuracy, older than the last accepted fix or
+ * would require moving faster than the maximum speed are rejected as outliers. Accepted fixes are
+ * merged by a constant velocity Kalman filter that predicts the position along the current
+ * velocity and weights new fixes by their accuracy. Speed and bearing are derived from the
+ * estimated velocity, unless the fix reports its own speed.
+ * <p>
+ * The filter keeps a constant amount of state and processing a fix does not allocate. Should
+ * several fixes in a row be rejected as outliers, the device is assumed to have moved and the
+ * filter restarts at the latest fix.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class LocationFilter {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111195.0;
+    private static final float MIN_ACCURACY_METERS = 1;
+    private static final int MAX_CONSECUTIVE_OUTLIERS = 3;
+    private static final double MIN_BEARING_SPEED = 0.5;
+
+    private final float processNoise;
+    private final float maxAccuracy;
+    private final float maxSpeed;
+
+    private boolean hasFix;
+    private double latitude;
+    private double longitude;
+    private double variance;
+    private double velocityNorth;
+    private double velocityEast;
+    private long time;
+    private double speed;
+    private double bearing;
+    private int consecutiveOutliers;
+
+    /**
+     * Creates a filter that expects the device to move with up to 3 m/s, rejects fixes less
+     * accurate than 100 meters and movements faster than 80 m/s.
+     */
+    public LocationFilter() {
+        this(3, 100, 80);
+    }
+
+    /**
+     * @param processNoise speed in meters per second with which the position is expected to
+     *                     change, higher values follow new fixes faster
+     * @param maxAccuracy  fixes with an accuracy worse than this many meters are rejected
+     * @param maxSpeed     fixes that would require moving faster than this many meters per second
+     *                     are rejected
+     */
+    public LocationFilter(float processNoise, float maxAccuracy, float maxSpeed) {
+        this.processNoise = processNoise;
+        this.maxAccuracy = maxAccuracy;
+        this.maxSpeed = maxSpeed;
+    }
+
+    /**
+     * Processes a new fix.
+     *
+     * @param location the new fix
+     * @return {@code true} if the fix was accepted and the filtered position updated
+     */
+    public boolean process(Location location) {
+        if (!location.hasAccuracy()) {
+            return false;
+        }
+        return process(
+                location.getLatitude(),
+                location.getLongitude(),
+                location.getAccuracy(),
+                location.getTime(),
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.hasBearing() ? location.getBearing() : Float.NaN
+        );
+    }
+
+    /**
+     * Processes a new fix given by its values.
+     *
+     * @param reportedSpeed   speed reported by the fix, {@link Float#NaN} if it has none
+     * @param reportedBearing bearing reported by the fix, {@link Float#NaN} if it has none
+     * @return {@code true} if the fix was accepted and the filtered position updated
+     */
+    boolean process(double fixLatitude, double fixLongitude, float fixAccuracy, long fixTime, float reportedSpeed, float reportedBearing) {
+        if (fixAccuracy > maxAccuracy) {
+            return false;
+        }
+
+        double accuracy = Math.max(fixAccuracy, MIN_ACCURACY_METERS);
+        if (!hasFix) {
+            start(fixLatitude, fixLongitude, accuracy, fixTime, reportedSpeed, reportedBearing);
+            return true;
+        }
+
+        long elapsedMillis = fixTime - time;
+        if (elapsedMillis <= 0) {
+            return false;
+        }
+        double elapsedSeconds = elapsedMillis / 1000.0;
+
+        // predict the position by moving along the current velocity
+        double metersPerDegreeLongitude = METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(latitude));
+        double predictedLatitude = latitude + velocityNorth * elapsedSeconds / METERS_PER_DEGREE_LATITUDE;
+        double predictedLongitude = longitude + velocityEast * elapsedSeconds / metersPerDegreeLongitude;
+        double predictedVariance = variance + elapsedSeconds * processNoise * processNoise;
+
+        double residualNorth = (fixLatitude - predictedLatitude) * METERS_PER_DEGREE_LATITUDE;
+        double residualEast = (fixLongitude - predictedLongitude) * metersPerDegreeLongitude;
+        double residual = Math.sqrt(residualNorth * residualNorth + residualEast * residualEast);
+        if ((residual - Math.sqrt(predictedVariance) - accuracy) / elapsedSeconds > maxSpeed) {
+            if (++consecutiveOutliers >= MAX_CONSECUTIVE_OUTLIERS) {
+                start(fixLatitude, fixLongitude, accuracy, fixTime, reportedSpeed, reportedBearing);
+                return true;
+            }
+            return false;
+        }
+        consecutiveOutliers = 0;
+
+        // alpha-beta update of position and velocity
+        double gain = predictedVariance / (predictedVariance + accuracy * accuracy);
+        double velocityGain = gain * gain / (2 - gain);
+        latitude = predictedLatitude + gain * residualNorth / METERS_PER_DEGREE_LATITUDE;
+        longitude = predictedLongitude + gain * residualEast / metersPerDegreeLongitude;
+        variance = (1 - gain) * predictedVariance;
+        velocityNorth += velocityGain * residualNorth / elapsedSeconds;
+        velocityEast += velocityGain * residualEast / elapsedSeconds;
+        time = fixTime;
+
+        double derivedSpeed = Math.sqrt(velocityNorth * velocityNorth + velocityEast * velocityEast);
+        speed = reportedSpeed > 0 ? reportedSpeed : derivedSpeed;
+        if (derivedSpeed >= MIN_BEARING_SPEED) {
+            bearing = (Math.toDegrees(Math.atan2(velocityEast, velocityNorth)) + 360) % 360;
+        } else if (!Float.isNaN(reportedBearing)) {
+            bearing = reportedBearing;
+        }
+        return true;
+    }
+
+    /**
+     * Forgets all processed fixes.
+     */
+    public void reset() {
+        hasFix = false;
+        consecutiveOutliers = 0;
+        velocityNorth = 0;
+        velocityEast = 0;
+        speed = 0;
+        bearing = 0;
+    }
+
+    /**
+     * @return {@code true} if a fix has been accepted
+     */
+    public boolean hasFix() {
+        return hasFix;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return estimated accuracy of the filtered position in meters
+     */
+    public float getAccuracy() {
+        return (float) Math.sqrt(variance);
+    }
+
+    /**
+     * @return speed in meters per second
+     */
+    public float getSpeed() {
+        return (float) speed;
+    }
+
+    /**
+     * @return bearing in degrees east of true north
+     */
+    public float getBearing() {
+        return (float) bearing;
+    }
+
+    /**
+     * @return time of the last accepted fix in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Writes the filtered position, accuracy, speed, bearing and time into the given location.
+     *
+     * @param location location to write to
+     */
+    public void writeTo(Location location) {
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setAccuracy(getAccuracy());
+        location.setSpeed(getSpeed());
+        location.setBearing(getBearing());
+        location.setTime(time);
+    }
+
+    private void start(double fixLatitude, double fixLongitude, double accuracy, long fixTime, float reportedSpeed, float reportedBearing) {
+        hasFix = true;
+        latitude = fixLatitude;
+        longitude = fixLongitude;
+        variance = accuracy * accuracy;
+        time = fixTime;
+        speed = Float.isNaN(reportedSpeed) ? 0 : reportedSpeed;
+        bearing = Float.isNaN(reportedBearing) ? 0 : reportedBearing;
+        velocityNorth = speed * Math.cos(Math.toRadians(bearing));
+        velocityEast = speed * Math.sin(Math.toRadians(bearing));
+        consecutiveOutliers = 0;
+    }
+}
@@ -20,10 +20,7 @@ import android.content.Context;
 import android.location.Location;
 import android.support.annotation.RequiresPermission;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.snapshot.LocationResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
 
 import io.reactivex.Single;
 
@@ -32,19 +29,19 @@ import io.reactivex.Single;
  */
 class LocationSingle extends BaseAwarenessSingle<Location, LocationResult> {
 
-    private LocationSingle(Context context) {
-        super(context);
+    private LocationSingle(Context context, AwarenessTransport transport, long timeoutMillis) {
+        super(context, transport, SnapshotType.LOCATION, timeoutMillis);
     }
 
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
-    public static Single<Location> create(Context context) {
-        return Single.create(new LocationSingle(context));
+    public static Single<Location> create(Context context, AwarenessTransport transport, long timeoutMillis) {
+        return Single.create(new LocationSingle(context, transport, timeoutMillis));
     }
 
     @Override
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
-    protected PendingResult<LocationResult> createRequest(GoogleApiClient googleApiClient) {
-        return Awareness.SnapshotApi.getLocation(googleApiClient);
+    protected Single<LocationResult> createRequest(AwarenessConnection connection) {
+        return connection.getLocation();
     }
 
     @Override
@@ -19,10 +19,7 @@ package com.mtramin.reactiveawareness2;
 import android.content.Context;
 import android.support.annotation.RequiresPermission;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.snapshot.PlacesResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
 import com.google.android.gms.location.places.PlaceLikelihood;
 
 import java.util.List;
@@ -34,19 +31,19 @@ import io.reactivex.Single;
  */
 class NearbySingle extends BaseAwarenessSingle<List<PlaceLikelihood>, PlacesResult> {
 
-    private NearbySingle(Context context) {
-        super(context);
+    private NearbySingle(Context context, AwarenessTransport transport, long timeoutMillis) {
+        super(context, transport, SnapshotType.PLACES, timeoutMillis);
     }
 
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
-    public static Single<List<PlaceLikelihood>> create(Context context) {
-        return Single.create(new NearbySingle(context));
+    public static Single<List<PlaceLikelihood>> create(Context context, AwarenessTransport transport, long timeoutMillis) {
+        return Single.create(new NearbySingle(context, transport, timeoutMillis));
     }
 
     @Override
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
-    protected PendingResult<PlacesResult> createRequest(GoogleApiClient googleApiClient) {
-        return Awareness.SnapshotApi.getPlaces(googleApiClient);
+    protected Single<PlacesResult> createRequest(AwarenessConnection connection) {
+        return connection.getPlaces();
     }
 
     @Override
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+import android.support.annotation.RequiresPermission;
+
+import com.google.android.gms.awareness.Awareness;
+import com.google.android.gms.awareness.fence.FenceQueryRequest;
+import com.google.android.gms.awareness.fence.FenceQueryResult;
+import com.google.android.gms.awareness.fence.FenceUpdateRequest;
+import com.google.android.gms.awareness.snapshot.BeaconStateResult;
+import com.google.android.gms.awareness.snapshot.DetectedActivityResult;
+import com.google.android.gms.awareness.snapshot.HeadphoneStateResult;
+import com.google.android.gms.awareness.snapshot.LocationResult;
+import com.google.android.gms.awareness.snapshot.PlacesResult;
+import com.google.android.gms.awareness.snapshot.WeatherResult;
+import com.google.android.gms.awareness.state.BeaconState;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.PendingResult;
+import com.google.android.gms.common.api.Result;
+import com.google.android.gms.common.api.Status;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+
+/**
+ * {@link AwarenessTransport} that executes all requests through a {@link GoogleApiClient} against
+ * the Awareness API of Google Play Services.
+ * <p>
+ * This is the transport used by default. Connection and result callbacks are delivered on the
+ * {@link AwarenessCallbackLooper}.
+ */
+public class PlayServicesTransport implements AwarenessTransport {
+
+    @Override
+    public Single<AwarenessConnection> connect(Context context) {
+        return Single.create(new Connector(context));
+    }
+
+    /**
+     * Wraps the given {@link PendingResult} in a {@link Single}. The request is only created once
+     * the Single is subscribed to and will be cancelled when the Single is disposed.
+     *
+     * @param request creates the {@link PendingResult} to wrap
+     * @return Single of the result
+     */
+    private static <R extends Result> Single<R> request(Callable<PendingResult<R>> request) {
+        return Single.create(emitter -> {
+            if (emitter.isDisposed()) {
+                // don't issue the request if it was abandoned while connecting
+                return;
+            }
+
+            AtomicBoolean done = new AtomicBoolean(false);
+            PendingResult<R> pendingResult = request.call();
+
+            emitter.setCancellable(() -> {
+                if (done.compareAndSet(false, true)) {
+                    pendingResult.cancel();
+                }
+            });
+
+            pendingResult.setResultCallback(result -> {
+                if (done.compareAndSet(false, true)) {
+                    emitter.onSuccess(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Connects a new {@link GoogleApiClient} and emits it as an {@link AwarenessConnection}.
+     */
+    private static class Connector implements SingleOnSubscribe<AwarenessConnection>,
+            GoogleApiClient.ConnectionCallbacks,
+            GoogleApiClient.OnConnectionFailedListener {
+
+        private final Context context;
+        private final AtomicBoolean delivered = new AtomicBoolean(false);
+
+        private SingleEmitter<AwarenessConnection> emitter;
+        private GoogleApiClient googleApiClient;
+
+        private Connector(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void subscribe(SingleEmitter<AwarenessConnection> emitter) throws Exception {
+            this.emitter = emitter;
+
+            googleApiClient = new GoogleApiClient.Builder(context)
+                    .addApi(Awareness.API)
+                    .setHandler(AwarenessCallbackLooper.getHandler())
+                    .addConnectionCallbacks(this)
+                    .addOnConnectionFailedListener(this)
+                    .build();
+
+            emitter.setCancellable(() -> {
+                if (delivered.compareAndSet(false, true)) {
+                    googleApiClient.disconnect();
+                }
+            });
+
+            googleApiClient.connect();
+        }
+
+        @Override
+        public void onConnected(@Nullable Bundle bundle) {
+            if (delivered.compareAndSet(false, true)) {
+                emitter.onSuccess(new PlayServicesConnection(googleApiClient));
+            }
+        }
+
+        @Override
+        public void onConnectionSuspended(int cause) {
+            // GoogleApiClient will automatically try to reconnect
+        }
+
+        @Override
+        public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+            if (delivered.compareAndSet(false, true)) {
+                emitter.onError(new AwarenessConnectionException(connectionResult.getErrorCode(), "Could not connect GoogleApiClient. " + connectionResult.getErrorMessage()));
+            }
+        }
+    }
+
+    /**
+     * {@link AwarenessConnection} backed by a connected {@link GoogleApiClient}.
+     */
+    private static class PlayServicesConnection implements AwarenessConnection {
+
+        private final GoogleApiClient googleApiClient;
+
+        private PlayServicesConnection(GoogleApiClient googleApiClient) {
+            this.googleApiClient = googleApiClient;
+        }
+
+        @Override
+        @RequiresPermission("com.google.android.gms.permission.ACTIVITY_RECOGNITION")
+        public Single<DetectedActivityResult> getDetectedActivity() {
+            return request(() -> Awareness.SnapshotApi.getDetectedActivity(googleApiClient));
+        }
+
+        @Override
+        @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+        @RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+        public Single<BeaconStateResult> getBeaconState(Collection<BeaconState.TypeFilter> typeFilters) {
+            return request(() -> Awareness.SnapshotApi.getBeaconState(googleApiClient, typeFilters));
+        }
+
+        @Override
+        public Single<HeadphoneStateResult> getHeadphoneState() {
+            return request(() -> Awareness.SnapshotApi.getHeadphoneState(googleApiClient));
+        }
+
+        @Override
+        @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+        public Single<LocationResult> getLocation() {
+            return request(() -> Awareness.SnapshotApi.getLocation(googleApiClient));
+        }
+
+        @Override
+        @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+        public Single<PlacesResult> getPlaces() {
+            return request(() -> Awareness.SnapshotApi.getPlaces(googleApiClient));
+        }
+
+        @Override
+        @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+        public Single<WeatherResult> getWeather() {
+            return request(() -> Awareness.SnapshotApi.getWeather(googleApiClient));
+        }
+
+        @Override
+        public Single<Status> updateFences(FenceUpdateRequest request) {
+            return request(() -> Awareness.FenceApi.updateFences(googleApiClient, request));
+        }
+
+        @Override
+        public Single<FenceQueryResult> queryFences(FenceQueryRequest request) {
+            return request(() -> Awareness.FenceApi.queryFences(googleApiClient, request));
+        }
+
+        @Override
+        public void disconnect() {
+            if (googleApiClient.isConnecting() || googleApiClient.isConnected()) {
+                googleApiClient.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Single;
+
+/**
+ * Snapshots that were requested ahead of time by {@link ReactiveSnapshot#warmUp(java.util.EnumSet)}.
+ * <p>
+ * The first request of a prefetched type is answered with the prefetched result, or joins the
+ * prefetch if it is still running. Every prefetched result is only used once and only if the
+ * prefetch was started within the max age, later requests query the Snapshot API again.
+ */
+class PrefetchedSnapshots {
+
+    private final long maxAgeNanos;
+    private final Map<SnapshotType, Prefetch> prefetches = new EnumMap<>(SnapshotType.class);
+
+    PrefetchedSnapshots(long maxAge, TimeUnit unit) {
+        this.maxAgeNanos = unit.toNanos(maxAge);
+    }
+
+    /**
+     * Starts the given request and keeps its result for the next request of the given type.
+     *
+     * @param type    type of the snapshot
+     * @param request request to prefetch
+     */
+    void prefetch(SnapshotType type, Single<?> request) {
+        Single<?> result = request.cache();
+        synchronized (this) {
+            prefetches.put(type, new Prefetch(result, System.nanoTime()));
+        }
+        result.subscribe(
+                value -> {
+                },
+                throwable -> {
+                    // a failed prefetch is repeated by the next request of its type
+                });
+    }
+
+    /**
+     * Serves the prefetched result of the given type, if available. Should the prefetch have
+     * failed, the given request is executed instead.
+     *
+     * @param type    type of the snapshot
+     * @param request request to execute when nothing was prefetched
+     * @return Single result of the prefetch or the request
+     */
+    @SuppressWarnings("unchecked")
+    <T> Single<T> serve(SnapshotType type, Single<T> request) {
+        return Single.defer(() -> {
+            Prefetch prefetch = take(type);
+            if (prefetch == null) {
+                return request;
+            }
+            return ((Single<T>) prefetch.result).onErrorResumeNext(request);
+        });
+    }
+
+    private synchronized Prefetch take(SnapshotType type) {
+        Prefetch prefetch = prefetches.remove(type);
+        if (prefetch == null || System.nanoTime() - prefetch.startedAt > maxAgeNanos) {
+            return null;
+        }
+        return prefetch;
+    }
+
+    private static class Prefetch {
+        final Single<?> result;
+        final long startedAt;
+
+        private Prefetch(Single<?> result, long startedAt) {
+            this.result = result;
+            this.startedAt = startedAt;
+        }
+    }
+}
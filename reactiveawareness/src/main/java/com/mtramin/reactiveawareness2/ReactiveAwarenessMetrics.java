@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Provides latency and outcome metrics of all requests executed by ReactiveAwareness.
+ * <p>
+ * Metrics are recorded per type of request. Snapshot requests are recorded under the name of their
+ * {@link SnapshotType}, fence operations under the names defined by the fence module.
+ * <p>
+ * Use {@link #getAll()} to periodically export the recorded values to your telemetry pipeline.
+ */
+public final class ReactiveAwarenessMetrics {
+
+    private static final ConcurrentMap<String, RequestMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled = true;
+
+    private ReactiveAwarenessMetrics() {
+    }
+
+    /**
+     * Enables or disables recording of metrics. Metrics are recorded by default.
+     *
+     * @param enabled {@code true} if metrics should be recorded
+     */
+    public static void setEnabled(boolean enabled) {
+        ReactiveAwarenessMetrics.enabled = enabled;
+    }
+
+    /**
+     * @return {@code true} if metrics are recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param type snapshot type
+     * @return metrics of the snapshot requests of the given type
+     */
+    public static RequestMetrics get(SnapshotType type) {
+        return get(type.name());
+    }
+
+    /**
+     * @param name name of the request type
+     * @return metrics of the requests with the given name
+     */
+    public static RequestMetrics get(String name) {
+        RequestMetrics metrics = METRICS.get(name);
+        if (metrics == null) {
+            RequestMetrics newMetrics = new RequestMetrics(name);
+            metrics = METRICS.putIfAbsent(name, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return metrics of all request types that have been recorded so far, by name
+     */
+    public static Map<String, RequestMetrics> getAll() {
+        return new HashMap<>(METRICS);
+    }
+
+    /**
+     * Clears all recorded metrics.
+     */
+    public static void reset() {
+        for (RequestMetrics metrics : METRICS.values()) {
+            metrics.reset();
+        }
+    }
+}
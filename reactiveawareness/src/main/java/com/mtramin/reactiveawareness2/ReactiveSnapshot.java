@@ -31,8 +31,14 @@ import com.google.android.gms.maps.model.LatLng;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Completable;
+import io.reactivex.Observable;
 import io.reactivex.Single;
 
 import static com.mtramin.reactiveawareness2.ApiKeyGuard.API_KEY_AWARENESS_API;
@@ -50,9 +56,52 @@ import static com.mtramin.reactiveawareness2.ApiKeyGuard.guardWithApiKey;
 public class ReactiveSnapshot {
 
     private final Context context;
+    private final AwarenessTransport transport;
+    private final SnapshotResilience resilience;
+    private final Map<SnapshotType, Long> timeouts;
+    private final SnapshotScheduler scheduler;
+    private final PrefetchedSnapshots prefetched;
+    private final ChangeTriggeredCache changeTriggered;
+    private final GeohashCache geohashCache;
+    private final RequestPriority priority;
+    private final boolean localHeadphones;
 
-    private ReactiveSnapshot(Context context) {
-        this.context = context;
+    private ReactiveSnapshot(Builder builder) {
+        this.context = builder.context;
+        this.localHeadphones = builder.localHeadphoneState && LocalHeadphoneState.isAvailable(builder.context);
+        this.transport = new SharedConnectionTransport(builder.transport, builder.connectionIdleTimeoutMillis, TimeUnit.MILLISECONDS);
+        this.timeouts = new EnumMap<>(builder.timeouts);
+        this.scheduler = new SnapshotScheduler(builder.maxConcurrentRequests);
+        this.prefetched = new PrefetchedSnapshots(builder.prefetchMaxAgeMillis, TimeUnit.MILLISECONDS);
+        this.priority = RequestPriority.INTERACTIVE;
+        SnapshotCache lastValues = new SnapshotCache();
+        this.resilience = new SnapshotResilience(
+                builder.retryPolicy,
+                lastValues,
+                builder.fallbackMaxAgeMillis,
+                builder.failureThreshold,
+                builder.openDurationMillis,
+                TimeUnit.MILLISECONDS
+        );
+        this.changeTriggered = new ChangeTriggeredCache(context, transport, builder.cacheUntilChanged, builder.locationChangeRadiusMeters);
+        this.changeTriggered.setRefresher(type -> {
+            Single<?> request = createRequest(type);
+            return request == null ? null : resilience.execute(type, scheduler.schedule(RequestPriority.PREFETCH, type, request));
+        });
+        this.geohashCache = new GeohashCache(lastValues, changeTriggered, builder.geohashPrecision, builder.geohashMaxAgeMillis, TimeUnit.MILLISECONDS, builder.geohashMaxBytes);
+    }
+
+    private ReactiveSnapshot(ReactiveSnapshot snapshot, RequestPriority priority) {
+        this.context = snapshot.context;
+        this.transport = snapshot.transport;
+        this.timeouts = snapshot.timeouts;
+        this.resilience = snapshot.resilience;
+        this.scheduler = snapshot.scheduler;
+        this.prefetched = snapshot.prefetched;
+        this.changeTriggered = snapshot.changeTriggered;
+        this.geohashCache = snapshot.geohashCache;
+        this.localHeadphones = snapshot.localHeadphones;
+        this.priority = priority;
     }
 
     /**
@@ -61,7 +110,108 @@ public class ReactiveSnapshot {
      * @return instance of ReactiveSnapshot
      */
     public static ReactiveSnapshot create(Context context) {
-        return new ReactiveSnapshot(context.getApplicationContext());
+        return new Builder(context).build();
+    }
+
+    /**
+     * Creates a new instance of ReactiveSnapshot that executes all Snapshot API calls through the
+     * given {@link AwarenessTransport}.
+     * @param context   context to use, will default to your application context
+     * @param transport transport to execute the requests with
+     * @return instance of ReactiveSnapshot
+     */
+    public static ReactiveSnapshot create(Context context, AwarenessTransport transport) {
+        return new Builder(context)
+                .setTransport(transport)
+                .build();
+    }
+
+    /**
+     * Returns a view on this ReactiveSnapshot whose requests are executed with the given priority.
+     * The view shares its request limit, retries and cached values with this instance.
+     * <p>
+     * By default all requests are {@link RequestPriority#INTERACTIVE}. Use a lower priority for
+     * prefetching or background refreshes so they do not delay requests the user is waiting for.
+     *
+     * @param priority priority of all requests made through the returned instance
+     * @return ReactiveSnapshot executing its requests with the given priority
+     */
+    public ReactiveSnapshot withPriority(RequestPriority priority) {
+        if (priority == this.priority) {
+            return this;
+        }
+        return new ReactiveSnapshot(this, priority);
+    }
+
+    /**
+     * Releases the fences registered for {@link Builder#setCacheUntilChanged(EnumSet)} and stops
+     * listening for them. Afterwards snapshots are not cached until changed anymore. This also
+     * affects all views created with {@link #withPriority(RequestPriority)}.
+     * <p>
+     * Call this once the ReactiveSnapshot is not needed anymore, as the internal fences would
+     * otherwise stay registered with the Awareness API.
+     */
+    public void release() {
+        changeTriggered.release();
+    }
+
+    /**
+     * Prepares this ReactiveSnapshot for the given snapshot types, so that the first requests of
+     * these types don't have to wait for the connection to the Awareness API to be established.
+     * <p>
+     * The required API keys are verified right away, the connection is established and kept open
+     * for the configured idle timeout, and the given snapshot types (except
+     * {@link SnapshotType#BEACONS} which require type filters) are requested in the background with
+     * {@link RequestPriority#PREFETCH}. The first request of a prefetched type will be answered with
+     * the prefetched result if it is not older than the configured prefetch max age.
+     * <p>
+     * Snapshot types whose permissions are not granted will not be prefetched successfully and are
+     * requested again once needed.
+     *
+     * @param types snapshot types to prepare
+     * @return Completable completing once the connection is established
+     */
+    @SuppressWarnings("MissingPermission")
+    public Completable warmUp(EnumSet<SnapshotType> types) {
+        guardWithApiKey(context, API_KEY_AWARENESS_API);
+        if (types.contains(SnapshotType.PLACES)) {
+            guardWithApiKey(context, API_KEY_PLACES_API);
+        }
+        if (types.contains(SnapshotType.BEACONS)) {
+            guardWithApiKey(context, API_KEY_BEACON_API);
+        }
+
+        return transport.connect(context)
+                .doOnSuccess(connection -> {
+                    for (SnapshotType type : types) {
+                        Single<?> request = createRequest(type);
+                        if (request != null) {
+                            prefetched.prefetch(type, resilience.execute(type, scheduler.schedule(RequestPriority.PREFETCH, type, request)));
+                        }
+                    }
+                    connection.disconnect();
+                })
+                .toCompletable();
+    }
+
+    @SuppressWarnings("MissingPermission")
+    private Single<?> createRequest(SnapshotType type) {
+        long timeout = timeouts.get(type);
+        switch (type) {
+            case ACTIVITY:
+                return ActivitySingle.create(context, transport, timeout);
+            case HEADPHONES:
+                // read locally without a request, nothing to prefetch
+                return localHeadphones ? null : HeadphoneSingle.create(context, transport, timeout);
+            case LOCATION:
+                return LocationSingle.create(context, transport, timeout);
+            case PLACES:
+                return NearbySingle.create(context, transport, timeout);
+            case WEATHER:
+                return WeatherSingle.create(context, transport, timeout);
+            default:
+                return null;
+        }
     }
 
     /**
@@ -72,7 +222,57 @@ public class ReactiveSnapshot {
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
     public Single<Weather> getWeather() {
         guardWithApiKey(context, API_KEY_AWARENESS_API);
-        return WeatherSingle.create(context);
+        return execute(SnapshotType.WEATHER, WeatherSingle.create(context, transport, timeouts.get(SnapshotType.WEATHER)));
+    }
+
+    /**
+     * Observes the weather at the devices current location by requesting it in the given
+     * interval with {@link RequestPriority#BACKGROUND}. A weather is only emitted if the
+     * temperature, feels-like temperature or dew point changed by at least 0.5 degrees celsius,
+     * the humidity changed by at least 2 percent or the conditions changed. Requests that failed
+     * transiently, e.g. due to a timeout, are skipped, other failures are emitted as errors.
+     *
+     * @param interval interval in which the weather is requested
+     * @param unit     unit of the interval
+     * @return Observable of the changed weather
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    public Observable<Weather> observeWeather(long interval, TimeUnit unit) {
+        return observeWeather(interval, unit, 0.5f, 2);
+    }
+
+    /**
+     * Observes the weather at the devices current location, see
+     * {@link #observeWeather(long, TimeUnit)}.
+     *
+     * @param interval             interval in which the weather is requested
+     * @param unit                 unit of the interval
+     * @param temperatureThreshold minimum change in degrees celsius of the temperature, feels-like
+     *                             temperature or dew point to emit a weather, must be positive
+     * @param humidityThreshold    minimum change in percent of the humidity to emit a weather, must
+     *                             be positive
+     * @return Observable of the changed weather
+     * @throws IllegalArgumentException if a threshold is not positive
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    public Observable<Weather> observeWeather(long interval, TimeUnit unit, float temperatureThreshold, int humidityThreshold) {
+        // a change of at least 0 is always reached, so every weather would be emitted
+        if (!(temperatureThreshold > 0) || humidityThreshold <= 0) {
+            throw new IllegalArgumentException("Weather thresholds must be positive");
+        }
+
+        ReactiveSnapshot background = withPriority(RequestPriority.BACKGROUND);
+
+        return Observable.defer(() -> {
+            WeatherChangeFilter filter = new WeatherChangeFilter(temperatureThreshold, humidityThreshold);
+            return Observable.interval(0, interval, unit)
+                    .concatMap(tick -> background.getWeather()
+                            .toObservable()
+                            .onErrorResumeNext((Throwable throwable) -> RetryPolicy.isTransient(throwable)
+                                    ? Observable.<Weather>empty()
+                                    : Observable.<Weather>error(throwable)))
+                    .filter(filter::accept);
+        });
     }
 
     /**
@@ -130,8 +330,8 @@ public class ReactiveSnapshot {
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
     public Single<List<Integer>> getWeatherConditions() {
         return getWeather()
-                .map(Weather::getConditions)
-                .map(conditions -> {
+                .map(weather -> {
+                    int[] conditions = weather.getConditions();
                     List<Integer> list = new ArrayList<>(conditions.length);
                     for (int condition : conditions) {
                         list.add(condition);
@@ -148,7 +348,49 @@ public class ReactiveSnapshot {
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
     public Single<Location> getLocation() {
         guardWithApiKey(context, API_KEY_AWARENESS_API);
-        return LocationSingle.create(context);
+        return execute(SnapshotType.LOCATION, LocationSingle.create(context, transport, timeouts.get(SnapshotType.LOCATION)));
+    }
+
+    /**
+     * Observes the location of the device by requesting it in the given interval with
+     * {@link RequestPriority#BACKGROUND}. The received fixes are processed by a
+     * {@link LocationFilter}: outliers are dropped, the position is smoothed and speed and bearing
+     * are derived from successive fixes. Only accepted fixes are emitted. Requests that failed
+     * transiently, e.g. due to a timeout, are skipped, other failures are emitted as errors.
+     *
+     * @param interval interval in which the location is requested
+     * @param unit     unit of the interval
+     * @return Observable of the filtered location
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    public Observable<Location> observeLocation(long interval, TimeUnit unit) {
+        return Observable.defer(() -> observeLocation(interval, unit, new LocationFilter()));
+    }
+
+    /**
+     * Observes the location of the device, see {@link #observeLocation(long, TimeUnit)}.
+     *
+     * @param interval interval in which the location is requested
+     * @param unit     unit of the interval
+     * @param filter   filter to process the fixes with. Must not be shared with other streams
+     * @return Observable of the filtered location
+     */
+    @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+    public Observable<Location> observeLocation(long interval, TimeUnit unit, LocationFilter filter) {
+        ReactiveSnapshot background = withPriority(RequestPriority.BACKGROUND);
+
+        return Observable.interval(0, interval, unit)
+                .concatMap(tick -> background.getLocation()
+                        .toObservable()
+                        .onErrorResumeNext((Throwable throwable) -> RetryPolicy.isTransient(throwable)
+                                ? Observable.<Location>empty()
+                                : Observable.<Location>error(throwable)))
+                .filter(filter::process)
+                .map(location -> {
+                    Location filtered = new Location(location.getProvider());
+                    filter.writeTo(filtered);
+                    return filtered;
+                });
     }
 
     /**
@@ -181,7 +423,7 @@ public class ReactiveSnapshot {
     @RequiresPermission("com.google.android.gms.permission.ACTIVITY_RECOGNITION")
     public Single<ActivityRecognitionResult> getActivity() {
         guardWithApiKey(context, API_KEY_AWARENESS_API);
-        return ActivitySingle.create(context);
+        return execute(SnapshotType.ACTIVITY, ActivitySingle.create(context, transport, timeouts.get(SnapshotType.ACTIVITY)));
     }
 
     /**
@@ -254,12 +496,36 @@ public class ReactiveSnapshot {
 
     /**
      * Provides the current state of the headphones.
+     * <p>
+     * Unless disabled via {@link Builder#setLocalHeadphoneState(boolean)}, the state is read
+     * locally from the system without a request to the Awareness API.
      *
      * @return Single event of {@code true} if the headphones are currently plugged in
      */
     public Single<Boolean> headphonesPluggedIn() {
+        if (localHeadphones) {
+            return Single.fromCallable(() -> LocalHeadphoneState.read(context));
+        }
+
         guardWithApiKey(context, API_KEY_AWARENESS_API);
-        return HeadphoneSingle.create(context);
+        return execute(SnapshotType.HEADPHONES, HeadphoneSingle.create(context, transport, timeouts.get(SnapshotType.HEADPHONES)));
+    }
+
+    /**
+     * Observes the state of the headphones. The current state is emitted right away, afterwards
+     * every change is emitted.
+     * <p>
+     * Changes are received locally from the system. Should the local headphone state be disabled
+     * via {@link Builder#setLocalHeadphoneState(boolean)}, only the current state is requested once
+     * from the Awareness API.
+     *
+     * @return Observable of {@code true} if the headphones are plugged in
+     */
+    public Observable<Boolean> observeHeadphones() {
+        if (localHeadphones) {
+            return LocalHeadphoneState.observe(context);
+        }
+        return headphonesPluggedIn().toObservable();
     }
 
     /**
@@ -271,7 +537,7 @@ public class ReactiveSnapshot {
     public Single<List<PlaceLikelihood>> getNearbyPlaces() {
         guardWithApiKey(context, API_KEY_AWARENESS_API);
         guardWithApiKey(context, API_KEY_PLACES_API);
-        return NearbySingle.create(context);
+        return execute(SnapshotType.PLACES, NearbySingle.create(context, transport, timeouts.get(SnapshotType.PLACES)));
     }
 
     /**
@@ -285,7 +551,7 @@ public class ReactiveSnapshot {
     public Single<List<BeaconState.BeaconInfo>> getBeacons(BeaconState.TypeFilter... typeFilters) {
         guardWithApiKey(context, API_KEY_AWARENESS_API);
         guardWithApiKey(context, API_KEY_BEACON_API);
-        return BeaconSingle.create(context, typeFilters);
+        return execute(SnapshotType.BEACONS, BeaconSingle.create(context, transport, timeouts.get(SnapshotType.BEACONS), typeFilters));
     }
 
     /**
@@ -299,6 +565,260 @@ public class ReactiveSnapshot {
     public Single<List<BeaconState.BeaconInfo>> getBeacons(Collection<BeaconState.TypeFilter> typeFilters) {
         guardWithApiKey(context, API_KEY_AWARENESS_API);
         guardWithApiKey(context, API_KEY_BEACON_API);
-        return BeaconSingle.create(context, typeFilters);
+        return execute(SnapshotType.BEACONS, BeaconSingle.create(context, transport, timeouts.get(SnapshotType.BEACONS), typeFilters));
+    }
+
+    /**
+     * @return {@code true} if the headphone state is read locally instead of requested from the
+     * Awareness API
+     */
+    boolean isHeadphoneStateLocal() {
+        return localHeadphones;
+    }
+
+    private <T> Single<T> execute(SnapshotType type, Single<T> request) {
+        Single<T> scheduled = prefetched.serve(type, resilience.execute(type, scheduler.schedule(priority, type, request)));
+        return changeTriggered.serve(type, geohashCache.serve(type, scheduled));
+    }
+
+    /**
+     * Builder for {@link ReactiveSnapshot} instances with custom configuration.
+     */
+    public static class Builder {
+
+        private final Context context;
+        private AwarenessTransport transport = new PlayServicesTransport();
+        private RetryPolicy retryPolicy = RetryPolicy.exponentialBackoff(3, 250, 4000, TimeUnit.MILLISECONDS);
+        private int failureThreshold = 5;
+        private long openDurationMillis = TimeUnit.SECONDS.toMillis(30);
+        private long fallbackMaxAgeMillis = TimeUnit.MINUTES.toMillis(5);
+        private final Map<SnapshotType, Long> timeouts = new EnumMap<>(SnapshotType.class);
+        private int maxConcurrentRequests = 4;
+        private long connectionIdleTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+        private long prefetchMaxAgeMillis = TimeUnit.SECONDS.toMillis(30);
+        private boolean localHeadphoneState = true;
+        private EnumSet<SnapshotType> cacheUntilChanged = EnumSet.noneOf(SnapshotType.class);
+        private double locationChangeRadiusMeters = 50;
+        private int geohashPrecision = 0;
+        private long geohashMaxAgeMillis;
+        private long geohashMaxBytes = 256 * 1024;
+
+        /**
+         * @param context context to use, will default to your application context
+         */
+        public Builder(Context context) {
+            this.context = context.getApplicationContext();
+            setTimeout(10, TimeUnit.SECONDS);
+        }
+
+        /**
+         * @param transport transport to execute the requests with. Defaults to
+         *                  {@link PlayServicesTransport}
+         * @return this builder
+         */
+        public Builder setTransport(AwarenessTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * @param retryPolicy policy for retrying failed requests. Defaults to 3 retries with
+         *                    exponential backoff starting at 250ms. Use {@link RetryPolicy#none()}
+         *                    to disable retries
+         * @return this builder
+         */
+        public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Configures the circuit breakers that suspend requests of a snapshot type after repeated
+         * failures. While suspended, requests are answered with the last received value of that
+         * type if it is not older than the fallback max age, see
+         * {@link #setCircuitBreakerFallbackMaxAge(long, TimeUnit)}, or fail with a
+         * {@link CircuitOpenException}.
+         *
+         * @param failureThreshold number of consecutive failures after which requests are suspended.
+         *                         Defaults to 5
+         * @param openDuration     time for which requests are suspended. Defaults to 30 seconds
+         * @param unit             unit of the open duration
+         * @return this builder
+         */
+        public Builder setCircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+            this.failureThreshold = failureThreshold;
+            this.openDurationMillis = unit.toMillis(openDuration);
+            return this;
+        }
+
+        /**
+         * @param maxAge maximum age of the last received value that is used to answer requests
+         *               while the circuit breaker of its type is open. Older values are not
+         *               used, the requests fail with a {@link CircuitOpenException} instead.
+         *               Defaults to 5 minutes
+         * @param unit   unit of the max age
+         * @return this builder
+         */
+        public Builder setCircuitBreakerFallbackMaxAge(long maxAge, TimeUnit unit) {
+            this.fallbackMaxAgeMillis = unit.toMillis(maxAge);
+            return this;
+        }
+
+        /**
+         * Sets the time after which requests of all snapshot types are cancelled and fail with an
+         * {@link AwarenessTimeoutException}. Defaults to 10 seconds.
+         *
+         * @param timeout timeout of each request
+         * @param unit    unit of the timeout
+         * @return this builder
+         */
+        public Builder setTimeout(long timeout, TimeUnit unit) {
+            for (SnapshotType type : SnapshotType.values()) {
+                setTimeout(type, timeout, unit);
+            }
+            return this;
+        }
+
+        /**
+         * Sets the time after which requests of the given snapshot type are cancelled and fail with
+         * an {@link AwarenessTimeoutException}.
+         *
+         * @param type    type of the snapshot
+         * @param timeout timeout of each request of this type
+         * @param unit    unit of the timeout
+         * @return this builder
+         */
+        public Builder setTimeout(SnapshotType type, long timeout, TimeUnit unit) {
+            timeouts.put(type, unit.toMillis(timeout));
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentRequests maximum number of requests that are executed at the same
+         *                              time. Further requests wait until a running request
+         *                              finished and are started by their
+         *                              {@link RequestPriority}. Defaults to 4
+         * @return this builder
+         */
+        public Builder setMaxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * @param idleTimeout time for which the connection to the Awareness API is kept open after
+         *                    the last request finished, so that subsequent requests can reuse it.
+         *                    Defaults to 30 seconds
+         * @param unit        unit of the idle timeout
+         * @return this builder
+         */
+        public Builder setConnectionIdleTimeout(long idleTimeout, TimeUnit unit) {
+            this.connectionIdleTimeoutMillis = unit.toMillis(idleTimeout);
+            return this;
+        }
+
+        /**
+         * @param maxAge time for which snapshots prefetched by
+         *               {@link ReactiveSnapshot#warmUp(EnumSet)} are used to answer requests.
+         *               Defaults to 30 seconds
+         * @param unit   unit of the max age
+         * @return this builder
+         */
+        public Builder setPrefetchMaxAge(long maxAge, TimeUnit unit) {
+            this.prefetchMaxAgeMillis = unit.toMillis(maxAge);
+            return this;
+        }
+
+        /**
+         * @param localHeadphoneState {@code true} to read the headphone state locally from the
+         *                            system where possible instead of requesting it from the
+         *                            Awareness API. Defaults to {@code true}
+         * @return this builder
+         */
+        public Builder setLocalHeadphoneState(boolean localHeadphoneState) {
+            this.localHeadphoneState = localHeadphoneState;
+            return this;
+        }
+
+        /**
+         * Caches the snapshots of the given types until they change. Once a value was received, a
+         * fence is registered that triggers when it changes and requests are answered from the
+         * cache until then. Triggered fences refresh the value in the background.
+         * <p>
+         * Supported are {@link SnapshotType#LOCATION} (leaving the location change radius),
+         * {@link SnapshotType#ACTIVITY} (stopping the current activity) and
+         * {@link SnapshotType#HEADPHONES} (plugging in or unplugging). Nothing is cached by
+         * default. Call {@link ReactiveSnapshot#release()} to remove the fences once the
+         * ReactiveSnapshot is not needed anymore.
+         *
+         * @param types snapshot types to cache
+         * @return this builder
+         * @throws IllegalArgumentException if one of the types is not supported
+         */
+        public Builder setCacheUntilChanged(EnumSet<SnapshotType> types) {
+            for (SnapshotType type : types) {
+                if (!ChangeTriggeredCache.SUPPORTED_TYPES.contains(type)) {
+                    throw new IllegalArgumentException("Snapshots of type " + type + " can not be cached until changed");
+                }
+            }
+            this.cacheUntilChanged = EnumSet.copyOf(types);
+            return this;
+        }
+
+        /**
+         * @param radiusMeters distance from the cached location after which it is considered
+         *                     changed. Defaults to 50 meters
+         * @return this builder
+         * @see #setCacheUntilChanged(EnumSet)
+         */
+        public Builder setLocationChangeRadius(double radiusMeters) {
+            this.locationChangeRadiusMeters = radiusMeters;
+            return this;
+        }
+
+        /**
+         * Caches weather and nearby places by the geohash cell of the last known location. While
+         * the location received last by {@link ReactiveSnapshot#getLocation()} is not older than a
+         * minute, requests are answered with a value received in the same cell within the max
+         * age. Disabled by default.
+         * <p>
+         * Locations answered by {@link #setCacheUntilChanged(EnumSet)} are not received again and
+         * don't count as recent. Instead the location cached until changed is used while it is
+         * cached, which is only accurate to the {@link #setLocationChangeRadius(double) change
+         * radius}. Keep the radius below the cell size to avoid values of neighbouring cells.
+         *
+         * @param precision number of characters of the geohash cells between 1 (~5000km) and 12
+         *                  (~4cm), e.g. 6 for cells of about 1.2km x 0.6km. {@code 0} disables
+         *                  the cache
+         * @param maxAge    time for which cached values are used
+         * @param unit      unit of the max age
+         * @return this builder
+         */
+        public Builder setGeohashCache(int precision, long maxAge, TimeUnit unit) {
+            if (precision < 0 || precision > Geohash.MAX_PRECISION) {
+                throw new IllegalArgumentException("Geohash precision must be between 0 and " + Geohash.MAX_PRECISION);
+            }
+            this.geohashPrecision = precision;
+            this.geohashMaxAgeMillis = unit.toMillis(maxAge);
+            return this;
+        }
+
+        /**
+         * @param maxBytes estimated memory the geohash cache may retain before the least
+         *                 recently used values are evicted. Defaults to 256KB
+         * @return this builder
+         * @see #setGeohashCache(int, long, TimeUnit)
+         */
+        public Builder setGeohashCacheMaxBytes(long maxBytes) {
+            this.geohashMaxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @return the configured ReactiveSnapshot
+         */
+        public ReactiveSnapshot build() {
+            return new ReactiveSnapshot(this);
+        }
     }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and outcome metrics of one type of Awareness request.
+ * <p>
+ * Every request is split into the time it took to connect to the Awareness API, the time spent
+ * waiting for the result of the request and the time spent unwrapping the result.
+ * <p>
+ * The metrics are read-only, they are recorded by ReactiveAwareness through a
+ * {@link RequestRecorder}.
+ */
+public class RequestMetrics {
+
+    private final String name;
+
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final LatencyHistogram requestTime = new LatencyHistogram();
+    private final LatencyHistogram unwrapTime = new LatencyHistogram();
+
+    private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<>();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong cancellations = new AtomicLong();
+
+    private final RequestRecorder recorder = new RequestRecorder(this);
+
+    RequestMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return name of the request type these metrics belong to
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return durations of connecting to the Awareness API
+     */
+    public LatencyHistogram getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * @return durations between issuing a request and receiving its result
+     */
+    public LatencyHistogram getRequestTime() {
+        return requestTime;
+    }
+
+    /**
+     * @return durations of unwrapping results
+     */
+    public LatencyHistogram getUnwrapTime() {
+        return unwrapTime;
+    }
+
+    /**
+     * @return number of results received per status code
+     */
+    public Map<Integer, Long> getStatusCodes() {
+        Map<Integer, Long> counts = new HashMap<>(statusCodes.size());
+        for (Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * @return number of requests that failed without delivering a result, e.g. because the
+     * connection failed
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return number of retried requests
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return number of requests that timed out
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return number of requests that were disposed before delivering a result
+     */
+    public long getCancelCount() {
+        return cancellations.get();
+    }
+
+    void recordConnect(long nanos) {
+        if (ReactiveAwarenessMetrics.isEnabled()) {
+            connectTime.record(nanos);
+        }
+    }
+
+    void recordRequest(long nanos) {
+        if (ReactiveAwarenessMetrics.isEnabled()) {
+            requestTime.record(nanos);
+        }
+    }
+
+    void recordUnwrap(long nanos) {
+        if (ReactiveAwarenessMetrics.isEnabled()) {
+            unwrapTime.record(nanos);
+        }
+    }
+
+    void recordStatus(int statusCode) {
+        if (!ReactiveAwarenessMetrics.isEnabled()) {
+            return;
+        }
+
+        AtomicLong count = statusCodes.get(statusCode);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = statusCodes.putIfAbsent(statusCode, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    void recordError() {
+        if (ReactiveAwarenessMetrics.isEnabled()) {
+            errors.incrementAndGet();
+        }
+    }
+
+    void recordRetry() {
+        if (ReactiveAwarenessMetrics.isEnabled()) {
+            retries.incrementAndGet();
+        }
+    }
+
+    void recordTimeout() {
+        if (ReactiveAwarenessMetrics.isEnabled()) {
+            timeouts.incrementAndGet();
+        }
+    }
+
+    void recordCancel() {
+        if (ReactiveAwarenessMetrics.isEnabled()) {
+            cancellations.incrementAndGet();
+        }
+    }
+
+    RequestRecorder getRecorder() {
+        return recorder;
+    }
+
+    void reset() {
+        connectTime.reset();
+        requestTime.reset();
+        unwrapTime.reset();
+        statusCodes.clear();
+        errors.set(0);
+        retries.set(0);
+        timeouts.set(0);
+        cancellations.set(0);
+    }
+}
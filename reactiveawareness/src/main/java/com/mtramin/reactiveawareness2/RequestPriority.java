@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+/**
+ * Priority of snapshot requests made through {@link ReactiveSnapshot}.
+ * <p>
+ * Whenever the number of outstanding requests is limited, waiting requests of a higher priority are
+ * always started before requests of a lower priority.
+ */
+public enum RequestPriority {
+    /**
+     * Requests the user is actively waiting for. This is the default priority.
+     */
+    INTERACTIVE,
+    /**
+     * Requests for values that are likely needed soon.
+     */
+    PREFETCH,
+    /**
+     * Requests nobody is waiting for, e.g. periodic refreshes.
+     */
+    BACKGROUND
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+/**
+ * Records the latency and outcome of one type of Awareness request into its
+ * {@link RequestMetrics}.
+ * <p>
+ * This is internal to ReactiveAwareness and only public so that the fence module can record its
+ * operations. Applications read the recorded values through {@link ReactiveAwarenessMetrics}.
+ */
+public final class RequestRecorder {
+
+    private final RequestMetrics metrics;
+
+    RequestRecorder(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param type snapshot type
+     * @return recorder of the snapshot requests of the given type
+     */
+    public static RequestRecorder get(SnapshotType type) {
+        return ReactiveAwarenessMetrics.get(type).getRecorder();
+    }
+
+    /**
+     * @param name name of the request type
+     * @return recorder of the requests with the given name
+     */
+    public static RequestRecorder get(String name) {
+        return ReactiveAwarenessMetrics.get(name).getRecorder();
+    }
+
+    /**
+     * @param nanos time it took to connect to the Awareness API
+     */
+    public void recordConnect(long nanos) {
+        metrics.recordConnect(nanos);
+    }
+
+    /**
+     * @param nanos time between issuing a request and receiving its result
+     */
+    public void recordRequest(long nanos) {
+        metrics.recordRequest(nanos);
+    }
+
+    /**
+     * @param nanos time it took to unwrap a result
+     */
+    public void recordUnwrap(long nanos) {
+        metrics.recordUnwrap(nanos);
+    }
+
+    /**
+     * @param statusCode status code of a received result
+     */
+    public void recordStatus(int statusCode) {
+        metrics.recordStatus(statusCode);
+    }
+
+    /**
+     * Records a request that failed without delivering a result.
+     */
+    public void recordError() {
+        metrics.recordError();
+    }
+
+    /**
+     * Records a retried request.
+     */
+    public void recordRetry() {
+        metrics.recordRetry();
+    }
+
+    /**
+     * Records a request that timed out.
+     */
+    public void recordTimeout() {
+        metrics.recordTimeout();
+    }
+
+    /**
+     * Records a request that was disposed before delivering a result.
+     */
+    public void recordCancel() {
+        metrics.recordCancel();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.CommonStatusCodes;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes if and when failed Awareness requests are retried.
+ * <p>
+ * Only failures that are likely to be transient are retried: unsuccessful results with one of the
+ * retryable status codes, timed out requests and failed connections while Google Play Services
+ * is updating or not reachable. Retries are delayed with exponential backoff and jitter, so that
+ * multiple clients do not retry in lockstep.
+ */
+public final class RetryPolicy {
+
+    private static final int[] DEFAULT_RETRYABLE_STATUS_CODES = {
+            CommonStatusCodes.NETWORK_ERROR,
+            CommonStatusCodes.INTERNAL_ERROR,
+            CommonStatusCodes.INTERRUPTED,
+            CommonStatusCodes.TIMEOUT
+    };
+
+    private static final int[] RETRYABLE_CONNECTION_ERRORS = {
+            ConnectionResult.NETWORK_ERROR,
+            ConnectionResult.INTERNAL_ERROR,
+            ConnectionResult.TIMEOUT,
+            ConnectionResult.INTERRUPTED,
+            ConnectionResult.SERVICE_UPDATING
+    };
+
+    private static final RetryPolicy NONE = new RetryPolicy(0, 0, 0, new int[0]);
+    private static final RetryPolicy TRANSIENT = new RetryPolicy(0, 0, 0, DEFAULT_RETRYABLE_STATUS_CODES);
+
+    private final Random random = new Random();
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int[] retryableStatusCodes;
+
+    private RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis, int[] retryableStatusCodes) {
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.retryableStatusCodes = retryableStatusCodes;
+    }
+
+    /**
+     * @return policy that never retries
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Creates a policy that retries with exponential backoff. The n-th retry is delayed by a random
+     * duration between half and all of {@code initialBackoff * 2^(n-1)}, but at most
+     * {@code maxBackoff}.
+     *
+     * @param maxRetries     maximum number of retries per request
+     * @param initialBackoff backoff before the first retry
+     * @param maxBackoff     upper bound for the backoff
+     * @param unit           unit of the backoff values
+     * @return retry policy
+     */
+    public static RetryPolicy exponentialBackoff(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        return new RetryPolicy(maxRetries, unit.toMillis(initialBackoff), unit.toMillis(maxBackoff), DEFAULT_RETRYABLE_STATUS_CODES);
+    }
+
+    /**
+     * Creates a copy of this policy that retries results with the given status codes instead of the
+     * default ones.
+     *
+     * @param statusCodes status codes as defined in {@link CommonStatusCodes} that should be retried
+     * @return retry policy
+     */
+    public RetryPolicy withRetryableStatusCodes(int... statusCodes) {
+        return new RetryPolicy(maxRetries, initialBackoffMillis, maxBackoffMillis, Arrays.copyOf(statusCodes, statusCodes.length));
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param throwable failure of a request
+     * @return {@code true} if the failure is transient and the request may be retried
+     */
+    boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof AwarenessTimeoutException) {
+            return true;
+        }
+        if (throwable instanceof AwarenessStatusException) {
+            return contains(retryableStatusCodes, ((AwarenessStatusException) throwable).getStatusCode());
+        }
+        if (throwable instanceof AwarenessConnectionException) {
+            return contains(RETRYABLE_CONNECTION_ERRORS, ((AwarenessConnectionException) throwable).getErrorCode());
+        }
+        return false;
+    }
+
+    /**
+     * @param throwable failure of a request
+     * @return {@code true} if the failure is likely to be transient, independent of the retry
+     * configuration. Failures that won't resolve on their own, e.g. a missing permission or API
+     * key, are never transient
+     */
+    static boolean isTransient(Throwable throwable) {
+        return throwable instanceof CircuitOpenException || TRANSIENT.isRetryable(throwable);
+    }
+
+    /**
+     * @param attempt number of the retry, starting at {@code 1}
+     * @return delay before the given retry in milliseconds
+     */
+    long getBackoffMillis(int attempt) {
+        long backoff = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (backoff <= 0 || backoff > maxBackoffMillis) {
+            backoff = maxBackoffMillis;
+        }
+
+        long half = backoff / 2;
+        return half + (long) (random.nextDouble() * (backoff - half));
+    }
+
+    private static boolean contains(int[] codes, int code) {
+        for (int candidate : codes) {
+            if (candidate == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
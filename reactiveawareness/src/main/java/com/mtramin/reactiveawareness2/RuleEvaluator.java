@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.reactivex.functions.Predicate;
+
+/**
+ * Incremental evaluator of a compiled {@link ContextRule}.
+ * <p>
+ * Every rule is compiled into a tree of nodes that keep their current state. A new value of a
+ * snapshot stream only re-evaluates the conditions on that stream. Changes are propagated to the
+ * parents, which update their state from counters of their children's states in constant time,
+ * until a node's state does not change anymore.
+ * <p>
+ * Until a value has been received for all conditions needed to decide the rule, its state is
+ * {@link #UNKNOWN}. Not thread-safe, updates have to be serialized.
+ */
+class RuleEvaluator {
+
+    static final int UNKNOWN = -1;
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+
+    private final Map<SnapshotType, List<Condition<?>>> conditions = new EnumMap<>(SnapshotType.class);
+    private final Node root;
+
+    RuleEvaluator(ContextRule rule) {
+        this.root = rule.compile(this);
+    }
+
+    /**
+     * @return snapshot types whose values are needed to evaluate the rule
+     */
+    Set<SnapshotType> getTypes() {
+        return conditions.keySet();
+    }
+
+    /**
+     * Evaluates all conditions on the given snapshot type with the new value.
+     *
+     * @param type  type of the snapshot
+     * @param value new value of the snapshot
+     * @return the new state of the rule
+     */
+    int update(SnapshotType type, Object value) throws Exception {
+        List<Condition<?>> affected = conditions.get(type);
+        if (affected != null) {
+            for (int i = 0, size = affected.size(); i < size; i++) {
+                affected.get(i).update(value);
+            }
+        }
+        return root.state;
+    }
+
+    <T> Node condition(SnapshotType type, Predicate<T> predicate) {
+        List<Condition<?>> typeConditions = conditions.get(type);
+        if (typeConditions == null) {
+            typeConditions = new ArrayList<>();
+            conditions.put(type, typeConditions);
+        }
+
+        Condition<T> condition = new Condition<>(predicate);
+        typeConditions.add(condition);
+        return condition;
+    }
+
+    Node combination(boolean and, List<Node> children) {
+        Combination combination = new Combination(and, children.size());
+        for (Node child : children) {
+            child.parent = combination;
+        }
+        return combination;
+    }
+
+    Node negation(Node child) {
+        Negation negation = new Negation();
+        child.parent = negation;
+        return negation;
+    }
+
+    abstract static class Node {
+
+        Node parent;
+        int state = UNKNOWN;
+
+        void setState(int newState) {
+            if (newState == state) {
+                return;
+            }
+
+            int oldState = state;
+            state = newState;
+            if (parent != null) {
+                parent.onChildChanged(oldState, newState);
+            }
+        }
+
+        void onChildChanged(int oldState, int newState) {
+        }
+    }
+
+    private static class Condition<T> extends Node {
+
+        private final Predicate<T> predicate;
+
+        private Condition(Predicate<T> predicate) {
+            this.predicate = predicate;
+        }
+
+        @SuppressWarnings("unchecked")
+        void update(Object value) throws Exception {
+            setState(predicate.test((T) value) ? TRUE : FALSE);
+        }
+    }
+
+    private static class Combination extends Node {
+
+        private final boolean and;
+        private final int size;
+        private int trueCount;
+        private int falseCount;
+
+        private Combination(boolean and, int size) {
+            this.and = and;
+            this.size = size;
+        }
+
+        @Override
+        void onChildChanged(int oldState, int newState) {
+            if (oldState == TRUE) {
+                trueCount--;
+            } else if (oldState == FALSE) {
+                falseCount--;
+            }
+
+            if (newState == TRUE) {
+                trueCount++;
+            } else if (newState == FALSE) {
+                falseCount++;
+            }
+
+            if (and) {
+                setState(falseCount > 0 ? FALSE : trueCount == size ? TRUE : UNKNOWN);
+            } else {
+                setState(trueCount > 0 ? TRUE : falseCount == size ? FALSE : UNKNOWN);
+            }
+        }
+    }
+
+    private static class Negation extends Node {
+
+        @Override
+        void onChildChanged(int oldState, int newState) {
+            setState(newState == UNKNOWN ? UNKNOWN : TRUE - newState);
+        }
+    }
+}
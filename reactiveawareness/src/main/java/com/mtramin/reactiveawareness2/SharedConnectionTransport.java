@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.support.annotation.RequiresPermission;
+
+import com.google.android.gms.awareness.fence.FenceQueryRequest;
+import com.google.android.gms.awareness.fence.FenceQueryResult;
+import com.google.android.gms.awareness.fence.FenceUpdateRequest;
+import com.google.android.gms.awareness.snapshot.BeaconStateResult;
+import com.google.android.gms.awareness.snapshot.DetectedActivityResult;
+import com.google.android.gms.awareness.snapshot.HeadphoneStateResult;
+import com.google.android.gms.awareness.snapshot.LocationResult;
+import com.google.android.gms.awareness.snapshot.PlacesResult;
+import com.google.android.gms.awareness.snapshot.WeatherResult;
+import com.google.android.gms.awareness.state.BeaconState;
+import com.google.android.gms.common.api.Status;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * {@link AwarenessTransport} that shares a single connection of another transport between all
+ * requests.
+ * <p>
+ * Every call to {@link #connect(Context)} leases the shared connection, which is only connected
+ * once. Disconnecting a lease releases it. The shared connection is disconnected once it was not
+ * leased for the idle timeout, so subsequent requests don't have to pay for connecting again.
+ */
+class SharedConnectionTransport implements AwarenessTransport {
+
+    private final AwarenessTransport transport;
+    private final long idleTimeoutMillis;
+    private final Scheduler scheduler = Schedulers.computation();
+
+    private Single<AwarenessConnection> pending;
+    private AwarenessConnection connection;
+    private int leases;
+    private Disposable idleDisconnect;
+
+    SharedConnectionTransport(AwarenessTransport transport, long idleTimeout, TimeUnit unit) {
+        this.transport = transport;
+        this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+    }
+
+    @Override
+    public Single<AwarenessConnection> connect(Context context) {
+        return Single.defer(() -> {
+            AtomicReference<AwarenessConnection> leased = new AtomicReference<>();
+            return leaseShared(context, leased)
+                    // disposed after the lease was taken but before it was handed over, e.g. by a
+                    // timeout, the lease would otherwise never be released
+                    .doOnDispose(() -> {
+                        AwarenessConnection lease = leased.get();
+                        if (lease != null) {
+                            lease.disconnect();
+                        }
+                    });
+        });
+    }
+
+    private Single<AwarenessConnection> leaseShared(Context context, AtomicReference<AwarenessConnection> leased) {
+        return shared(context)
+                .flatMap(connection -> {
+                    AwarenessConnection lease = lease(connection);
+                    if (lease == null) {
+                        // disconnected for being idle before it could be leased, connect again
+                        return leaseShared(context, leased);
+                    }
+                    leased.set(lease);
+                    return Single.just(lease);
+                });
+    }
+
+    private synchronized Single<AwarenessConnection> shared(Context context) {
+        if (connection != null) {
+            return Single.just(connection);
+        }
+
+        if (pending == null) {
+            pending = transport.connect(context)
+                    .doOnSuccess(this::onConnected)
+                    .doOnError(this::onConnectionFailed)
+                    .cache();
+        }
+        return pending;
+    }
+
+    private synchronized void onConnected(AwarenessConnection connection) {
+        this.connection = connection;
+        this.pending = null;
+
+        // all requests waiting for this connection might have been disposed already
+        if (leases == 0) {
+            scheduleIdleDisconnect(connection);
+        }
+    }
+
+    private synchronized void onConnectionFailed(Throwable throwable) {
+        pending = null;
+    }
+
+    /**
+     * @return lease of the given connection or {@code null} if it is no longer the shared connection
+     */
+    private synchronized AwarenessConnection lease(AwarenessConnection connection) {
+        if (this.connection != connection) {
+            return null;
+        }
+
+        leases++;
+        if (idleDisconnect != null) {
+            idleDisconnect.dispose();
+            idleDisconnect = null;
+        }
+        return new Lease(connection);
+    }
+
+    private synchronized void release(AwarenessConnection connection) {
+        leases--;
+        if (leases == 0) {
+            scheduleIdleDisconnect(connection);
+        }
+    }
+
+    private void scheduleIdleDisconnect(AwarenessConnection connection) {
+        if (idleDisconnect != null) {
+            idleDisconnect.dispose();
+        }
+        idleDisconnect = Single.timer(idleTimeoutMillis, TimeUnit.MILLISECONDS, scheduler)
+                .subscribe(ignored -> disconnectIfIdle(connection));
+    }
+
+    private void disconnectIfIdle(AwarenessConnection connection) {
+        synchronized (this) {
+            if (leases > 0 || this.connection != connection) {
+                return;
+            }
+            this.connection = null;
+            this.idleDisconnect = null;
+        }
+        connection.disconnect();
+    }
+
+    /**
+     * Lease of the shared connection, disconnecting it only releases the lease.
+     */
+    private class Lease implements AwarenessConnection {
+
+        private final AwarenessConnection connection;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(AwarenessConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        @RequiresPermission("com.google.android.gms.permission.ACTIVITY_RECOGNITION")
+        public Single<DetectedActivityResult> getDetectedActivity() {
+            return connection.getDetectedActivity();
+        }
+
+        @Override
+        @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+        @RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+        public Single<BeaconStateResult> getBeaconState(Collection<BeaconState.TypeFilter> typeFilters) {
+            return connection.getBeaconState(typeFilters);
+        }
+
+        @Override
+        public Single<HeadphoneStateResult> getHeadphoneState() {
+            return connection.getHeadphoneState();
+        }
+
+        @Override
+        @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+        public Single<LocationResult> getLocation() {
+            return connection.getLocation();
+        }
+
+        @Override
+        @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+        public Single<PlacesResult> getPlaces() {
+            return connection.getPlaces();
+        }
+
+        @Override
+        @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
+        public Single<WeatherResult> getWeather() {
+            return connection.getWeather();
+        }
+
+        @Override
+        public Single<Status> updateFences(FenceUpdateRequest request) {
+            return connection.updateFences(request);
+        }
+
+        @Override
+        public Single<FenceQueryResult> queryFences(FenceQueryRequest request) {
+            return connection.queryFences(request);
+        }
+
+        @Override
+        public void disconnect() {
+            if (released.compareAndSet(false, true)) {
+                release(connection);
+            }
+        }
+    }
+}
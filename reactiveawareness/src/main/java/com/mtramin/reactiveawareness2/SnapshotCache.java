@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the last successfully received value of every {@link SnapshotType}.
+ */
+class SnapshotCache {
+
+    private final Map<SnapshotType, Entry> entries = new ConcurrentHashMap<>();
+
+    void put(SnapshotType type, Object value) {
+        entries.put(type, new Entry(value, System.nanoTime()));
+    }
+
+    /**
+     * @param type type of the snapshot
+     * @return the last value of the given type or {@code null} if none was received yet
+     */
+    Entry get(SnapshotType type) {
+        return entries.get(type);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    static class Entry {
+        final Object value;
+        final long receivedAt;
+
+        private Entry(Object value, long receivedAt) {
+            this.value = value;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import org.reactivestreams.Publisher;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Guards snapshot requests with retries and a circuit breaker per {@link SnapshotType}.
+ * <p>
+ * Transient failures are retried according to the {@link RetryPolicy}. Repeated failures open the
+ * circuit breaker of the snapshot type, after which requests fail fast with a
+ * {@link CircuitOpenException} or, if available and not older than the fallback max age, are
+ * answered with the last cached value.
+ */
+class SnapshotResilience {
+
+    private final RetryPolicy retryPolicy;
+    private final SnapshotCache cache;
+    private final long fallbackMaxAgeNanos;
+    private final Scheduler scheduler = Schedulers.computation();
+    private final Map<SnapshotType, CircuitBreaker> breakers = new EnumMap<>(SnapshotType.class);
+
+    SnapshotResilience(RetryPolicy retryPolicy, SnapshotCache cache, long fallbackMaxAge, int failureThreshold, long openDuration, TimeUnit unit) {
+        this.retryPolicy = retryPolicy;
+        this.cache = cache;
+        this.fallbackMaxAgeNanos = unit.toNanos(fallbackMaxAge);
+
+        for (SnapshotType type : SnapshotType.values()) {
+            breakers.put(type, new CircuitBreaker(failureThreshold, openDuration, unit));
+        }
+    }
+
+    /**
+     * Executes the given request with retries and circuit breaking.
+     *
+     * @param type    type of the requested snapshot
+     * @param request request to execute, will be subscribed to once per attempt
+     * @return Single result of the request
+     */
+    <T> Single<T> execute(SnapshotType type, Single<T> request) {
+        CircuitBreaker breaker = breakers.get(type);
+        RequestRecorder metrics = RequestRecorder.get(type);
+
+        return Single.defer(() -> attempt(type, breaker, request))
+                .retryWhen(errors -> retries(errors, metrics))
+                .onErrorResumeNext(throwable -> fallback(type, throwable));
+    }
+
+    private <T> Single<T> attempt(SnapshotType type, CircuitBreaker breaker, Single<T> request) {
+        if (!breaker.allowRequest()) {
+            return Single.error(new CircuitOpenException(type));
+        }
+
+        return request
+                .doOnSuccess(value -> {
+                    breaker.onSuccess();
+                    if (type != SnapshotType.BEACONS) {
+                        cache.put(type, value);
+                    }
+                })
+                .doOnError(throwable -> {
+                    if (retryPolicy.isRetryable(throwable)) {
+                        breaker.onFailure();
+                    } else {
+                        breaker.onCancel();
+                    }
+                })
+                .doOnDispose(breaker::onCancel);
+    }
+
+    private Publisher<Object> retries(Flowable<Throwable> errors, RequestRecorder metrics) {
+        AtomicInteger attempts = new AtomicInteger();
+
+        return errors
+                .flatMap(throwable -> {
+                    int attempt = attempts.incrementAndGet();
+                    if (attempt > retryPolicy.getMaxRetries() || !retryPolicy.isRetryable(throwable)) {
+                        return Flowable.<Integer>error(throwable);
+                    }
+
+                    metrics.recordRetry();
+                    return Flowable.just(attempt)
+                            .delay(retryPolicy.getBackoffMillis(attempt), TimeUnit.MILLISECONDS, scheduler);
+                })
+                .cast(Object.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Single<T> fallback(SnapshotType type, Throwable throwable) {
+        if (throwable instanceof CircuitOpenException) {
+            SnapshotCache.Entry entry = cache.get(type);
+            if (entry != null && System.nanoTime() - entry.receivedAt <= fallbackMaxAgeNanos) {
+                return Single.just((T) entry.value);
+            }
+        }
+        return Single.error(throwable);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Limits the number of outstanding requests of a {@link ReactiveSnapshot} and decides which of the
+ * waiting requests is started next.
+ * <p>
+ * Requests are started strictly by {@link RequestPriority}. Within one priority every
+ * {@link SnapshotType} has its own queue and the queues take turns, so that many waiting requests
+ * of one type can not hold back the requests of another type.
+ */
+class SnapshotScheduler {
+
+    private final int maxConcurrentRequests;
+    private final Map<RequestPriority, PriorityQueue> queues = new EnumMap<>(RequestPriority.class);
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    private int running;
+
+    SnapshotScheduler(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+
+        for (RequestPriority priority : RequestPriority.values()) {
+            queues.put(priority, new PriorityQueue());
+        }
+    }
+
+    /**
+     * Schedules the given request. It will be subscribed to once a slot is available and no
+     * request of a higher priority is waiting. Disposing the returned Single removes a waiting
+     * request from its queue or frees the slot of a running request.
+     *
+     * @param priority priority of the request
+     * @param type     type of the requested snapshot
+     * @param request  request to execute
+     * @return Single result of the request
+     */
+    <T> Single<T> schedule(RequestPriority priority, SnapshotType type, Single<T> request) {
+        return Single.create(emitter -> {
+            Task<T> task = new Task<>(this, type, request, emitter);
+            emitter.setCancellable(task::cancel);
+            enqueue(priority, task);
+            drain();
+        });
+    }
+
+    private synchronized void enqueue(RequestPriority priority, Task<?> task) {
+        queues.get(priority).add(task);
+    }
+
+    private synchronized void remove(Task<?> task) {
+        for (PriorityQueue queue : queues.values()) {
+            if (queue.remove(task)) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void release() {
+        running--;
+    }
+
+    /**
+     * Starts waiting requests as long as slots are available. Only one thread drains at a time,
+     * requests that complete synchronously while being started make it loop again instead of
+     * draining recursively.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            startWaiting();
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Requests are started outside of the lock as they might complete synchronously.
+     */
+    private void startWaiting() {
+        while (true) {
+            Task<?> next;
+            synchronized (this) {
+                if (running >= maxConcurrentRequests) {
+                    return;
+                }
+                next = poll();
+                if (next == null) {
+                    return;
+                }
+                running++;
+            }
+            next.start();
+        }
+    }
+
+    private Task<?> poll() {
+        for (RequestPriority priority : RequestPriority.values()) {
+            Task<?> task = queues.get(priority).poll();
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waiting requests of one priority, queued per {@link SnapshotType}. Types with waiting
+     * requests take turns in the order in which they started waiting.
+     */
+    private static class PriorityQueue {
+
+        private final Map<SnapshotType, Queue<Task<?>>> queues = new EnumMap<>(SnapshotType.class);
+        private final Queue<SnapshotType> turns = new ArrayDeque<>();
+
+        void add(Task<?> task) {
+            Queue<Task<?>> queue = queues.get(task.type);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(task.type, queue);
+            }
+            if (queue.isEmpty()) {
+                turns.add(task.type);
+            }
+            queue.add(task);
+        }
+
+        boolean remove(Task<?> task) {
+            Queue<Task<?>> queue = queues.get(task.type);
+            if (queue == null || !queue.remove(task)) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                turns.remove(task.type);
+            }
+            return true;
+        }
+
+        Task<?> poll() {
+            SnapshotType type = turns.poll();
+            if (type == null) {
+                return null;
+            }
+
+            Queue<Task<?>> queue = queues.get(type);
+            Task<?> task = queue.poll();
+            if (!queue.isEmpty()) {
+                turns.add(type);
+            }
+            return task;
+        }
+    }
+
+    /**
+     * A scheduled request that frees its slot exactly once, when it terminates or is cancelled.
+     */
+    private static class Task<T> {
+
+        private enum State {
+            QUEUED,
+            RUNNING,
+            DONE
+        }
+
+        private final SnapshotScheduler scheduler;
+        private final SnapshotType type;
+        private final Single<T> request;
+        private final SingleEmitter<T> emitter;
+
+        private State state = State.QUEUED;
+        private Disposable disposable;
+
+        private Task(SnapshotScheduler scheduler, SnapshotType type, Single<T> request, SingleEmitter<T> emitter) {
+            this.scheduler = scheduler;
+            this.type = type;
+            this.request = request;
+            this.emitter = emitter;
+        }
+
+        void start() {
+            boolean cancelled;
+            synchronized (this) {
+                cancelled = state == State.DONE;
+                if (!cancelled) {
+                    state = State.RUNNING;
+                }
+            }
+            if (cancelled) {
+                // cancelled while being dequeued
+                releaseSlot();
+                return;
+            }
+
+            Disposable subscription = request.subscribe(
+                    value -> {
+                        if (complete()) {
+                            try {
+                                emitter.onSuccess(value);
+                            } finally {
+                                releaseSlot();
+                            }
+                        }
+                    },
+                    throwable -> {
+                        if (complete()) {
+                            try {
+                                emitter.onError(throwable);
+                            } finally {
+                                releaseSlot();
+                            }
+                        }
+                    });
+
+            synchronized (this) {
+                disposable = subscription;
+                cancelled = state == State.DONE;
+            }
+            if (cancelled) {
+                subscription.dispose();
+            }
+        }
+
+        void cancel() {
+            State previous;
+            Disposable subscription;
+            synchronized (this) {
+                previous = state;
+                subscription = disposable;
+                state = State.DONE;
+            }
+
+            if (previous == State.QUEUED) {
+                scheduler.remove(this);
+            } else if (previous == State.RUNNING) {
+                releaseSlot();
+                if (subscription != null) {
+                    subscription.dispose();
+                }
+            }
+        }
+
+        private boolean complete() {
+            synchronized (this) {
+                if (state != State.RUNNING) {
+                    return false;
+                }
+                state = State.DONE;
+            }
+            return true;
+        }
+
+        private void releaseSlot() {
+            scheduler.release();
+            scheduler.drain();
+        }
+    }
+}
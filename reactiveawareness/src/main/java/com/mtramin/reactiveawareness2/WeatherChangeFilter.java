@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import com.google.android.gms.awareness.state.Weather;
+
+import java.util.Arrays;
+
+/**
+ * Decides whether a {@link Weather} changed enough compared to the last accepted one.
+ * <p>
+ * The compared values are read once from every {@link Weather} and kept as primitives, so each
+ * received weather is only compared against the values of the last accepted weather.
+ */
+class WeatherChangeFilter {
+
+    private final float temperatureThreshold;
+    private final int humidityThreshold;
+
+    private boolean hasWeather;
+    private float temperature;
+    private float feelsLikeTemperature;
+    private float dewPoint;
+    private int humidity;
+    private int[] conditions;
+
+    /**
+     * @param temperatureThreshold change in degrees celsius of the temperature, feels-like
+     *                             temperature or dew point that is considered a change
+     * @param humidityThreshold    change in percent of the humidity that is considered a change
+     */
+    WeatherChangeFilter(float temperatureThreshold, int humidityThreshold) {
+        this.temperatureThreshold = temperatureThreshold;
+        this.humidityThreshold = humidityThreshold;
+    }
+
+    /**
+     * @param weather the received weather
+     * @return {@code true} if the weather changed beyond the thresholds or its conditions changed
+     * since the last accepted weather. The weather is accepted in that case
+     */
+    boolean accept(Weather weather) {
+        float newTemperature = weather.getTemperature(Weather.CELSIUS);
+        float newFeelsLikeTemperature = weather.getFeelsLikeTemperature(Weather.CELSIUS);
+        float newDewPoint = weather.getDewPoint(Weather.CELSIUS);
+        int newHumidity = weather.getHumidity();
+        int[] newConditions = weather.getConditions();
+
+        if (hasWeather
+                && Math.abs(newTemperature - temperature) < temperatureThreshold
+                && Math.abs(newFeelsLikeTemperature - feelsLikeTemperature) < temperatureThreshold
+                && Math.abs(newDewPoint - dewPoint) < temperatureThreshold
+                && Math.abs(newHumidity - humidity) < humidityThreshold
+                && sameConditions(newConditions)) {
+            return false;
+        }
+
+        hasWeather = true;
+        temperature = newTemperature;
+        feelsLikeTemperature = newFeelsLikeTemperature;
+        dewPoint = newDewPoint;
+        humidity = newHumidity;
+        conditions = newConditions == null ? new int[0] : sorted(newConditions);
+        return true;
+    }
+
+    private boolean sameConditions(int[] newConditions) {
+        if (newConditions == null) {
+            return conditions.length == 0;
+        }
+        if (newConditions.length != conditions.length) {
+            return false;
+        }
+        if (newConditions.length == 1) {
+            return newConditions[0] == conditions[0];
+        }
+        return Arrays.equals(sorted(newConditions), conditions);
+    }
+
+    private static int[] sorted(int[] conditions) {
+        int[] copy = conditions.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
@@ -19,11 +19,8 @@ package com.mtramin.reactiveawareness2;
 import android.content.Context;
 import android.support.annotation.RequiresPermission;
 
-import com.google.android.gms.awareness.Awareness;
 import com.google.android.gms.awareness.snapshot.WeatherResult;
 import com.google.android.gms.awareness.state.Weather;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
 
 import io.reactivex.Single;
 
@@ -33,19 +30,19 @@ import io.reactivex.Single;
  */
 class WeatherSingle extends BaseAwarenessSingle<Weather, WeatherResult> {
 
-    private WeatherSingle(Context context) {
-        super(context);
+    private WeatherSingle(Context context, AwarenessTransport transport, long timeoutMillis) {
+        super(context, transport, SnapshotType.WEATHER, timeoutMillis);
     }
 
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
-    public static Single<Weather> create(Context context) {
-        return Single.create(new WeatherSingle(context));
+    public static Single<Weather> create(Context context, AwarenessTransport transport, long timeoutMillis) {
+        return Single.create(new WeatherSingle(context, transport, timeoutMillis));
     }
 
     @Override
     @RequiresPermission("android.permission.ACCESS_FINE_LOCATION")
-    protected PendingResult<WeatherResult> createRequest(GoogleApiClient googleApiClient) {
-        return Awareness.SnapshotApi.getWeather(googleApiClient);
+    protected Single<WeatherResult> createRequest(AwarenessConnection connection) {
+        return connection.getWeather();
     }
 
     @Override
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Marvin Ramin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mtramin.reactiveawareness2;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocationFilterTest {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111195.0;
+    private static final double START_LATITUDE = 52.52;
+    private static final double START_LONGITUDE = 13.405;
+    private static final long START_TIME = 1_000_000L;
+
+    @Test
+    public void followsTrackWithConstantSpeed() {
+        LocationFilter filter = new LocationFilter();
+        Random random = new Random(42);
+        double speed = 10;
+        double bearing = Math.toRadians(60);
+        int warmUp = 10;
+        int fixes = 300;
+
+        double squaredErrors = 0;
+        double rawSquaredErrors = 0;
+        for (int i = 0; i < fixes; i++) {
+            double north = speed * i * Math.cos(bearing);
+            double east = speed * i * Math.sin(bearing);
+            // 10m noise, distributed on both axes
+            double noiseNorth = random.nextGaussian() * 10 / Math.sqrt(2);
+            double noiseEast = random.nextGaussian() * 10 / Math.sqrt(2);
+
+            assertTrue(filter.process(latitude(north + noiseNorth), longitude(east + noiseEast), 10, START_TIME + i * 1000L, Float.NaN, Float.NaN));
+
+            if (i >= warmUp) {
+                double errorNorth = (filter.getLatitude() - latitude(north)) * METERS_PER_DEGREE_LATITUDE;
+                double errorEast = (filter.getLongitude() - longitude(east)) * metersPerDegreeLongitude();
+                squaredErrors += errorNorth * errorNorth + errorEast * errorEast;
+                rawSquaredErrors += noiseNorth * noiseNorth + noiseEast * noiseEast;
+            }
+        }
+
+        double error = Math.sqrt(squaredErrors / (fixes - warmUp));
+        double rawError = Math.sqrt(rawSquaredErrors / (fixes - warmUp));
+        assertTrue("filtered error " + error + "m", error < 10);
+        assertTrue("filtered error " + error + "m not below raw error " + rawError + "m", error < rawError);
+        assertEquals(speed, filter.getSpeed(), 2);
+        assertEquals(60, filter.getBearing(), 10);
+    }
+
+    @Test
+    public void rejectsInaccurateFixes() {
+        LocationFilter filter = new LocationFilter();
+
+        assertFalse(filter.process(START_LATITUDE, START_LONGITUDE, 150, START_TIME, Float.NaN, Float.NaN));
+        assertFalse(filter.hasFix());
+    }
+
+    @Test
+    public void rejectsFixesNotNewerThanLastAcceptedFix() {
+        LocationFilter filter = new LocationFilter();
+
+        assertTrue(filter.process(START_LATITUDE, START_LONGITUDE, 10, START_TIME, Float.NaN, Float.NaN));
+        assertFalse(filter.process(latitude(5), START_LONGITUDE, 10, START_TIME, Float.NaN, Float.NaN));
+        assertFalse(filter.process(latitude(5), START_LONGITUDE, 10, START_TIME - 1000, Float.NaN, Float.NaN));
+        assertEquals(START_TIME, filter.getTime());
+    }
+
+    @Test
+    public void restartsAfterConsecutiveOutliers() {
+        LocationFilter filter = new LocationFilter();
+        double jump = 10_000;
+
+        assertTrue(filter.process(START_LATITUDE, START_LONGITUDE, 10, START_TIME, Float.NaN, Float.NaN));
+        assertFalse(filter.process(latitude(jump), START_LONGITUDE, 10, START_TIME + 1000, Float.NaN, Float.NaN));
+        assertFalse(filter.process(latitude(jump), START_LONGITUDE, 10, START_TIME + 2000, Float.NaN, Float.NaN));
+        assertEquals(START_LATITUDE, filter.getLatitude(), 1e-9);
+
+        assertTrue(filter.process(latitude(jump), START_LONGITUDE, 10, START_TIME + 3000, Float.NaN, Float.NaN));
+        assertEquals(latitude(jump), filter.getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void prefersReportedSpeed() {
+        LocationFilter filter = new LocationFilter();
+
+        assertTrue(filter.process(START_LATITUDE, START_LONGITUDE, 10, START_TIME, 4, 90));
+        assertTrue(filter.process(START_LATITUDE, longitude(4), 10, START_TIME + 1000, 4.5f, 90));
+        assertEquals(4.5f, filter.getSpeed(), 0);
+    }
+
+    private static double latitude(double northMeters) {
+        return START_LATITUDE + northMeters / METERS_PER_DEGREE_LATITUDE;
+    }
+
+    private static double longitude(double eastMeters) {
+        return START_LONGITUDE + eastMeters / metersPerDegreeLongitude();
+    }
+
+    private static double metersPerDegreeLongitude() {
+        return METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(START_LATITUDE));
+    }
+}
@@ -133,7 +133,7 @@ public class MainActivity extends AppCompatActivity {
         disposables.add(
                 reactiveSnapshot.getActivity()
                         .subscribe(
-                                this::setActivity,
+                                result -> runOnUiThread(() -> setActivity(result)),
                                 throwable -> logError(throwable, "activity")
                         )
         );
@@ -141,7 +141,7 @@ public class MainActivity extends AppCompatActivity {
         disposables.add(
                 reactiveSnapshot.headphonesPluggedIn()
                         .subscribe(
-                                this::setHeadphoneState,
+                                pluggedIn -> runOnUiThread(() -> setHeadphoneState(pluggedIn)),
                                 throwable -> logError(throwable, "headphones")
                         )
         );
@@ -156,7 +156,7 @@ public class MainActivity extends AppCompatActivity {
         disposables.add(
                 reactiveSnapshot.getLocation()
                         .subscribe(
-                                this::setLocation,
+                                location -> runOnUiThread(() -> setLocation(location)),
                                 throwable -> logError(throwable, "location")
                         )
         );
@@ -164,7 +164,7 @@ public class MainActivity extends AppCompatActivity {
         disposables.add(
                 reactiveSnapshot.getWeather()
                         .subscribe(
-                                this::setWeather,
+                                weather -> runOnUiThread(() -> setWeather(weather)),
                                 throwable -> logError(throwable, "weather")
                         )
         );